@@ -0,0 +1,62 @@
+import java.util.zip.GZIPInputStream
+import java.util.zip.ZipFile
+
+def prefix = 'distribution/a-directory-name-long-enough/to-push-the-entry-names/past-one-hundred-characters/'
+def expected = ['commons-io-commons-io-2.4.jar', 'com.google.inject.extensions-guice-throwingproviders-4.0.jar', 'bundles.xml'].collect { prefix + it }
+assert expected[1].length() > 100
+def target = new File(basedir, 'target')
+
+/*
+ * Read a ustar archive by hand: name, size and time of each entry, and the bundles.xml text.
+ * The name is the prefix field, a slash, and the name field, when the prefix is set.
+ */
+def readTar = { InputStream input ->
+    def entries = []
+    def metadata = null
+    def data = new DataInputStream(input)
+    byte[] header = new byte[512]
+    while (true) {
+        data.readFully(header)
+        if (header.every { it == 0 }) {
+            break
+        }
+        def field = { int offset, int length -> new String(header, offset, length, 'US-ASCII').replaceAll('\u0000.*', '').trim() }
+        assert field(257, 6) == 'ustar'
+        def name = field(345, 155) ? field(345, 155) + '/' + field(0, 100) : field(0, 100)
+        def size = Long.parseLong(field(124, 12), 8)
+        def time = Long.parseLong(field(136, 12), 8) * 1000L
+        byte[] content = new byte[(int) size]
+        data.readFully(content)
+        data.skipBytes((int) ((512 - size % 512) % 512))
+        if (name.endsWith('bundles.xml')) {
+            metadata = new String(content, 'UTF-8')
+        }
+        entries << [name: name, size: size, time: time]
+    }
+    input.close()
+    [entries, metadata]
+}
+
+def checkEntries = { String what, List entries, String metadata ->
+    assert entries*.name == expected : what
+    assert entries[0].size == 185140 : what
+    assert metadata.contains('<bundle start="true">commons-io-commons-io-2.4.jar</bundle>') : what
+    // bundles.xml gets the time of the newest bundle, so that the same bundles make the same archive.
+    assert entries[2].time == entries[0..1]*.time.max() : what
+}
+
+def zip = new ZipFile(new File(target, 'bundles.zip'))
+def zipEntries = zip.entries().toList()
+checkEntries('zip', zipEntries.collect { [name: it.name, size: it.size, time: it.time] },
+    zip.getInputStream(zip.getEntry(expected[2])).getText('UTF-8'))
+// jars are stored, not compressed again.
+assert zipEntries[0].method == java.util.zip.ZipEntry.STORED
+zip.close()
+
+def (tarEntries, tarMetadata) = readTar(new FileInputStream(new File(target, 'bundles.tar')))
+checkEntries('tar', tarEntries, tarMetadata)
+
+def (tgzEntries, tgzMetadata) = readTar(new GZIPInputStream(new FileInputStream(new File(target, 'bundles.tar.gz'))))
+checkEntries('tar.gz', tgzEntries, tgzMetadata)
+
+assert true
@@ -0,0 +1,29 @@
+import java.security.MessageDigest
+
+def dir = new File(basedir, 'target/bundles')
+def hex = { String algorithm, File file -> MessageDigest.getInstance(algorithm).digest(file.bytes).encodeHex().toString() }
+
+def bundles = new XmlSlurper().parse(new File(dir, 'bundles.xml'))
+assert bundles.level.bundle.size() == 2
+bundles.level.bundle.each { bundle ->
+    def file = new File(dir, bundle.text())
+    assert bundle.@size == file.length().toString()
+    assert bundle.@sha256 == hex('SHA-256', file)
+    assert bundle.@sha1 == hex('SHA-1', file)
+    // in the format of sha256sum and sha1sum, after a comment with the bundle's size and time.
+    def stamp = "# size ${file.length()} modified ${file.lastModified()}".toString()
+    assert new File(dir, file.name + '.sha256').readLines() == [stamp, bundle.@sha256.toString() + '  ' + file.name]
+    assert new File(dir, file.name + '.sha1').readLines() == [stamp, bundle.@sha1.toString() + '  ' + file.name]
+}
+def commonsIo = bundles.level.find { it.@level == '1' }.bundle
+assert commonsIo.text() == 'commons-io-commons-io-2.4.jar'
+assert commonsIo.@symbolicName == 'org.apache.commons.io'
+assert commonsIo.@version == '2.4.0'
+assert commonsIo.@fragmentHost.size() == 0
+
+def exports = new XmlSlurper().parse(new File(basedir, 'target/exports.xml'))
+def ioExports = exports.bundle.find { it.@filename == 'commons-io-commons-io-2.4.jar' }
+assert ioExports.@symbolicName == 'org.apache.commons.io'
+assert ioExports.text().contains('org.apache.commons.io.output;version="2.4"')
+
+true
@@ -0,0 +1,42 @@
+def log = new File(basedir, 'build.log').text
+// Maven warns about mojos "not marked as @threadSafe" (or "not marked as thread-safe", lately).
+assert !log.contains('not marked as')
+
+def digest = { File file -> java.security.MessageDigest.getInstance('SHA-256').digest(file.bytes).encodeHex().toString() }
+def staged = { String module ->
+    def files = [:]
+    new File(basedir, "${module}/target/bundles").eachFile { files[it.name] = digest(it) }
+    files
+}
+def expected = staged('m1')
+
+def shared = 0
+['m1', 'm2', 'm3', 'm4', 'm5'].each { module ->
+    def path = new File(basedir, "${module}/target/bundles")
+    assert new File(path, 'bundles.xml').exists()
+    assert new File(path, 'com.google.inject.extensions-guice-throwingproviders-4.0.jar').exists()
+    assert new File(path, 'commons-io-commons-io-2.4.jar').exists()
+    // the plain bundle and its classified variant, each in its own file, each with its own manifest.
+    ['': 'concurrent-it-lib', '-variant': 'concurrent-it-lib-variant'].each { suffix, bsn ->
+        def jar = new java.util.jar.JarFile(new File(path, "com.basistech.bbh.it-concurrent-it-lib-1.0.2-SNAPSHOT${suffix}.jar"))
+        assert jar.manifest.mainAttributes.getValue('Bundle-SymbolicName') == bsn
+        jar.close()
+    }
+    def listed = new File(path, 'bundles.xml').text
+    assert listed.contains('com.basistech.bbh.it-concurrent-it-lib-1.0.2-SNAPSHOT.jar')
+    assert listed.contains('com.basistech.bbh.it-concurrent-it-lib-1.0.2-SNAPSHOT-variant.jar')
+    // every project gets the same bundles, whichever one resolved them.
+    assert staged(module) == expected
+    def metrics = new File(basedir, "${module}/target/collect-bundles-metrics.json").text
+    def count = (metrics =~ /"sharedResolutions": (\d+)/)[0][1] as int
+    if (module == 'm5') {
+        // its repositories differ from the others', so it shares nothing with them.
+        assert count == 0
+    } else {
+        shared += count
+    }
+}
+// two distinct bundles, asked for by four projects with the same repositories: each is resolved once for them.
+assert shared == 6
+
+assert true
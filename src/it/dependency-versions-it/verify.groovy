@@ -0,0 +1,11 @@
+Properties properties = new Properties()
+File propertiesFile = new File('target/it/dependency-versions-it/target/app.properties')
+propertiesFile.withInputStream {
+    properties.load(it)
+}
+
+assert properties.'osgi-version.commons-io.commons-io' == '2.7.0'
+assert properties.'osgi-range.commons-io.commons-io' == '[2.7,3)'
+assert properties.'osgi-version.org.slf4j.slf4j-api' == '1.7.5'
+assert properties.'osgi-range.org.slf4j.slf4j-api' == '[1.7,2)'
+assert !properties.containsKey('osgi-version.org.ow2.asm.asm')
@@ -0,0 +1,43 @@
+import java.util.jar.Attributes
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+import java.util.zip.ZipEntry
+
+/*
+ * Install made-up bundles, with the headers and class entries that overlap, straight into the
+ * local repository as com.basistech.bbh.it.duplicates:<name>:<version>. The classes are empty;
+ * only their names matter.
+ */
+def install = { String name, String version, Map<String, String> headers, List<String> classes ->
+    def dir = new File(localRepositoryPath, "com/basistech/bbh/it/duplicates/${name}/${version}")
+    dir.mkdirs()
+    new File(dir, "${name}-${version}.pom").text = """<project>
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>com.basistech.bbh.it.duplicates</groupId>
+  <artifactId>${name}</artifactId>
+  <version>${version}</version>
+</project>
+"""
+    def manifest = new Manifest()
+    manifest.mainAttributes.put(Attributes.Name.MANIFEST_VERSION, '1.0')
+    manifest.mainAttributes.putValue('Bundle-ManifestVersion', '2')
+    manifest.mainAttributes.putValue('Bundle-SymbolicName', name)
+    manifest.mainAttributes.putValue('Bundle-Version', version)
+    headers.each { k, v -> manifest.mainAttributes.putValue(k, v) }
+    def out = new JarOutputStream(new FileOutputStream(new File(dir, "${name}-${version}.jar")), manifest)
+    classes.each {
+        out.putNextEntry(new ZipEntry(it))
+        out.closeEntry()
+    }
+    out.close()
+}
+
+install('lib', '1.0', ['Export-Package': 'com.acme.lib;version="1.0"'], ['com/acme/lib/Lib.class'])
+install('lib', '2.0', ['Export-Package': 'com.acme.lib;version="2.0"'], ['com/acme/lib/Lib.class', 'com/acme/lib/New.class'])
+install('split-a', '1.0', ['Export-Package': 'com.acme.split'], ['com/acme/split/A.class'])
+install('split-b', '1.0', [:], ['com/acme/split/B.class'])
+// the fragment's classes end up in its host, so sharing the host's package is no split.
+install('host', '1.0', [:], ['com/acme/host/Host.class'])
+install('host-fragment', '1.0', ['Fragment-Host': 'host'], ['com/acme/host/Extra.class'])
+
+true
@@ -0,0 +1,28 @@
+def prefix = 'com.basistech.bbh.it.duplicates-'
+def target = new File(basedir, 'target')
+
+def report = new File(target, 'duplicates-report.txt').readLines()
+assert report[0] == '# 1 artifacts at more than one version, 2 split packages, 1 sets of bundles sharing classes'
+def findings = report.drop(1)
+assert findings.contains('com.basistech.bbh.it.duplicates:lib is present at versions [2.0, 1.0]')
+assert findings.contains("package com.acme.split is in [${prefix}split-a-1.0.jar, ${prefix}split-b-1.0.jar]".toString())
+assert findings.contains("package com.acme.lib is in [${prefix}lib-1.0.jar, ${prefix}lib-2.0.jar]".toString())
+assert findings.contains("1 classes are in each of [${prefix}lib-1.0.jar, ${prefix}lib-2.0.jar], e.g. [com/acme/lib/Lib.class]".toString())
+// a fragment shares its host's package without splitting it.
+assert !findings.any { it.contains('com.acme.host') }
+
+// warn leaves both versions in place; collapse keeps only the higher, at the lower of its levels.
+def warned = new File(target, 'bundles/bundles.xml').text
+assert warned.contains("${prefix}lib-1.0.jar") && warned.contains("${prefix}lib-2.0.jar")
+def collapsed = new XmlSlurper().parse(new File(target, 'collapsed/bundles.xml'))
+def names = collapsed.level.bundle*.text()
+assert !names.contains("${prefix}lib-1.0.jar".toString())
+assert collapsed.level.find { it.@level == '1' }.bundle*.text().contains("${prefix}lib-2.0.jar".toString())
+assert !new File(target, "collapsed/${prefix}lib-1.0.jar").exists()
+def collapsedReport = new File(target, 'collapsed-duplicates-report.txt').readLines()
+assert collapsedReport[0] == '# 0 artifacts at more than one version, 1 split packages, 0 sets of bundles sharing classes'
+
+def log = new File(basedir, 'build.log').text
+assert log.contains('Collapsing com.basistech.bbh.it.duplicates:lib:jar:1.0 to version 2.0')
+
+true
@@ -0,0 +1,8 @@
+def specs = new File(basedir, 'src/specs').canonicalFile
+def a = new File(specs, 'a.xml')
+def b = new File(specs, 'b.xml')
+def log = new File(basedir, 'build.log').text
+assert log.contains("Bundle info files include each other: [${a}, ${b}, ${a}]".toString())
+assert !new File(basedir, 'target/bundles/bundles.xml').exists()
+
+true
@@ -0,0 +1,13 @@
+def bundles = new XmlSlurper().parse(new File(basedir, 'target/bundles/bundles.xml'))
+def levels = [:]
+bundles.level.each { level -> level.bundle.each { levels[it.text()] = level.@level.toInteger() } }
+// base.xml, reached through both features, comes first, and its level wins.
+assert levels == ['commons-io-commons-io-2.4.jar': 1, 'com.google.inject.extensions-guice-throwingproviders-4.0.jar': 2]
+assert bundles.level.find { it.@level == '1' }.bundle.@start == 'true'
+
+def log = new File(basedir, 'build.log').readLines()
+def specs = new File(basedir, 'src/specs').canonicalFile
+assert log.count { it.contains("includes ${new File(specs, 'feature-a.xml')} more than once") } == 1
+assert log.any { it.contains('Multiple levels for commons-io:commons-io::2.4; choosing 1') }
+
+true
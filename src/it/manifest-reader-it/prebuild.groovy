@@ -0,0 +1,68 @@
+import java.util.jar.Attributes
+import java.util.jar.Manifest
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/*
+ * Bundles laid out in ways that a reader of the central directory has to cope with, installed
+ * straight into the local repository as com.basistech.bbh.it.manifests:<name>:1.0.
+ */
+def manifestBytes = { Map<String, String> headers ->
+    def manifest = new Manifest()
+    manifest.mainAttributes.put(Attributes.Name.MANIFEST_VERSION, '1.0')
+    manifest.mainAttributes.putValue('Bundle-ManifestVersion', '2')
+    headers.each { k, v -> manifest.mainAttributes.putValue(k, v) }
+    def bytes = new ByteArrayOutputStream()
+    manifest.write(bytes)
+    bytes.toByteArray()
+}
+
+def install = { String name, Closure content ->
+    def dir = new File(localRepositoryPath, "com/basistech/bbh/it/manifests/${name}/1.0")
+    dir.mkdirs()
+    new File(dir, "${name}-1.0.pom").text = """<project>
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>com.basistech.bbh.it.manifests</groupId>
+  <artifactId>${name}</artifactId>
+  <version>1.0</version>
+</project>
+"""
+    def out = new ZipOutputStream(new FileOutputStream(new File(dir, "${name}-1.0.jar")))
+    content(out)
+    out.close()
+}
+
+def exports = (1..30).collect { "com.acme.late.p${it};version=\"1.0.0\"" }.join(',')
+
+// the manifest last, after enough entries that the central directory does not fit one read.
+install('late-manifest') { ZipOutputStream out ->
+    (1..800).each {
+        out.putNextEntry(new ZipEntry("com/acme/late/p${it % 30 + 1}/C${it}.class"))
+        out.write(new byte[16])
+    }
+    out.putNextEntry(new ZipEntry('META-INF/MANIFEST.MF'))
+    out.write(manifestBytes(['Bundle-SymbolicName': 'late-manifest', 'Bundle-Version': '1.0.0', 'Export-Package': exports]))
+    out.setComment('A comment, so that the end record is not at the very end of the file.')
+}
+
+// the manifest stored, not deflated.
+install('stored-manifest') { ZipOutputStream out ->
+    byte[] bytes = manifestBytes(['Bundle-SymbolicName': 'stored-manifest;singleton:=true', 'Bundle-Version': '2.1.0'])
+    def entry = new ZipEntry('META-INF/MANIFEST.MF')
+    entry.method = ZipEntry.STORED
+    entry.size = bytes.length
+    def crc = new CRC32()
+    crc.update(bytes)
+    entry.crc = crc.value
+    out.putNextEntry(entry)
+    out.write(bytes)
+}
+
+install('fragment') { ZipOutputStream out ->
+    out.putNextEntry(new ZipEntry('META-INF/MANIFEST.MF'))
+    out.write(manifestBytes(['Bundle-SymbolicName': 'fragment', 'Bundle-Version': '1.0.0',
+        'Fragment-Host': 'late-manifest;bundle-version="[1.0,2)"']))
+}
+
+true
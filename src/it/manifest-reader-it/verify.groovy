@@ -0,0 +1,29 @@
+def bundles = new XmlSlurper().parse(new File(basedir, 'target/bundles/bundles.xml'))
+def byName = [:]
+bundles.level.bundle.each { byName[it.text()] = it }
+assert byName.size() == 4
+
+def commonsIo = byName['commons-io-commons-io-2.4.jar']
+assert commonsIo.@symbolicName == 'org.apache.commons.io'
+assert commonsIo.@start == 'true'
+
+def late = byName['com.basistech.bbh.it.manifests-late-manifest-1.0.jar']
+assert late.@symbolicName == 'late-manifest'
+assert late.@version == '1.0.0'
+assert late.@start == 'true'
+
+def stored = byName['com.basistech.bbh.it.manifests-stored-manifest-1.0.jar']
+assert stored.@symbolicName == 'stored-manifest'
+assert stored.@version == '2.1.0'
+
+// a fragment is never started.
+def fragment = byName['com.basistech.bbh.it.manifests-fragment-1.0.jar']
+assert fragment.@start == 'false'
+assert fragment.@fragmentHost == 'late-manifest;bundle-version="[1.0,2)"'
+
+// the whole of a header that the manifest wraps over many lines.
+def exports = new XmlSlurper().parse(new File(basedir, 'target/exports.xml'))
+def lateExports = exports.bundle.find { it.@symbolicName == 'late-manifest' }.text()
+(1..30).each { assert lateExports.contains("com.acme.late.p${it};version=\"1.0.0\"") }
+
+true
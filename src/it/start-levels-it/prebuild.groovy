@@ -0,0 +1,37 @@
+import java.util.jar.Attributes
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+
+/*
+ * Install made-up bundles, with just the headers that wire them up, straight into the
+ * local repository as com.basistech.bbh.it.levels:<name>:1.0.
+ */
+def install = { String name, Map<String, String> headers ->
+    def dir = new File(localRepositoryPath, "com/basistech/bbh/it/levels/${name}/1.0")
+    dir.mkdirs()
+    new File(dir, "${name}-1.0.pom").text = """<project>
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>com.basistech.bbh.it.levels</groupId>
+  <artifactId>${name}</artifactId>
+  <version>1.0</version>
+</project>
+"""
+    def manifest = new Manifest()
+    manifest.mainAttributes.put(Attributes.Name.MANIFEST_VERSION, '1.0')
+    manifest.mainAttributes.putValue('Bundle-ManifestVersion', '2')
+    manifest.mainAttributes.putValue('Bundle-SymbolicName', name)
+    manifest.mainAttributes.putValue('Bundle-Version', '1.0.0')
+    headers.each { k, v -> manifest.mainAttributes.putValue(k, v) }
+    new JarOutputStream(new FileOutputStream(new File(dir, "${name}-1.0.jar")), manifest).close()
+}
+
+install('api', ['Export-Package': 'com.acme.api;version="1.0.0"', 'Import-Package': 'java.util,javax.xml.parsers'])
+install('standalone', [:])
+install('impl', ['Import-Package': 'com.acme.api;version="[1.0,2)"', 'Export-Package': 'com.acme.impl'])
+install('app', ['Import-Package': 'com.acme.impl', 'Require-Bundle': 'api;bundle-version="1.0"'])
+// need each other, and the api as well.
+install('cycle-a', ['Export-Package': 'com.acme.a', 'Import-Package': 'com.acme.b'])
+install('cycle-b', ['Export-Package': 'com.acme.b', 'Import-Package': 'com.acme.a,com.acme.api'])
+install('impl-fragment', ['Fragment-Host': 'impl'])
+
+true
@@ -0,0 +1,28 @@
+def levels = [:]
+def starts = [:]
+def bundles = new XmlSlurper().parse(new File(basedir, 'target/bundles/bundles.xml'))
+bundles.level.each { level ->
+    level.bundle.each { bundle ->
+        def name = bundle.text() - 'com.basistech.bbh.it.levels-' - '-1.0.jar'
+        levels[name] = level.@level.toInteger()
+        starts[name] = bundle.@start.toString()
+    }
+}
+// one level above the highest of what each needs, from defaultStartLevel up.
+assert levels == ['api': 10, 'standalone': 10, 'impl': 11, 'cycle-a': 11, 'cycle-b': 11, 'app': 12, 'impl-fragment': 11]
+// the fragment goes with its host, and is not started.
+assert starts['impl-fragment'] == 'false'
+assert starts['app'] == 'true'
+
+def report = new File(basedir, 'target/start-levels.txt').readLines()
+assert report[0] == '# computed\tdeclared\tsymbolic name\tfile'
+def rows = report.drop(1).collect { it.split('\t') }
+assert rows.every { it[1] == '1' }
+assert rows.collect { it[0].toInteger() } == rows.collect { it[0].toInteger() }.sort()
+assert rows.find { it[2] == 'app' }[0] == '12'
+
+def log = new File(basedir, 'build.log').text
+def cycle = log.readLines().find { it.contains('These bundles need each other, and share a start level') }
+assert cycle.contains('cycle-a-1.0.jar') && cycle.contains('cycle-b-1.0.jar') && !cycle.contains('impl')
+
+true
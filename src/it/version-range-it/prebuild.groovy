@@ -0,0 +1,43 @@
+import java.util.jar.Attributes
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+
+/*
+ * Install made-up bundles straight into the local repository as com.basistech.bbh.it.ranges:<name>:<version>,
+ * with the local metadata that lists their versions, so that ranges resolve without a remote repository.
+ */
+def install = { String name, List<String> versions ->
+    def base = new File(localRepositoryPath, "com/basistech/bbh/it/ranges/${name}")
+    versions.each { version ->
+        def dir = new File(base, version)
+        dir.mkdirs()
+        new File(dir, "${name}-${version}.pom").text = """<project>
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>com.basistech.bbh.it.ranges</groupId>
+  <artifactId>${name}</artifactId>
+  <version>${version}</version>
+</project>
+"""
+        def manifest = new Manifest()
+        manifest.mainAttributes.put(Attributes.Name.MANIFEST_VERSION, '1.0')
+        manifest.mainAttributes.putValue('Bundle-ManifestVersion', '2')
+        manifest.mainAttributes.putValue('Bundle-SymbolicName', name)
+        manifest.mainAttributes.putValue('Bundle-Version', version)
+        new JarOutputStream(new FileOutputStream(new File(dir, "${name}-${version}.jar")), manifest).close()
+    }
+    new File(base, 'maven-metadata-local.xml').text = """<metadata>
+  <groupId>com.basistech.bbh.it.ranges</groupId>
+  <artifactId>${name}</artifactId>
+  <versioning>
+    <versions>
+${versions.collect { "      <version>${it}</version>" }.join('\n')}
+    </versions>
+  </versioning>
+</metadata>
+"""
+}
+
+install('ranged', ['1.2', '1.5', '2.5'])
+install('pinned', ['1.2', '1.5', '2.5'])
+
+true
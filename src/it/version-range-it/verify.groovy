@@ -0,0 +1,29 @@
+import groovy.json.JsonSlurper
+
+def target = new File(basedir, 'target')
+def prefix = 'com.basistech.bbh.it.ranges-'
+
+// the lock pins one; the other is resolved from the metadata, to the best in the range.
+['bundles', 'again'].each { dir ->
+    def names = new XmlSlurper().parse(new File(target, "${dir}/bundles.xml")).level.bundle*.text()
+    assert names.sort() == ["${prefix}pinned-1.2.jar", "${prefix}ranged-1.5.jar"]*.toString()
+}
+
+def lock = new File(basedir, 'ranges.lock').readLines()
+assert lock.contains('com.basistech.bbh.it.ranges:pinned\t[1.0, 2.0)\t1.2')
+assert lock.contains('com.basistech.bbh.it.ranges:ranged\t[1.0, 2.0)\t1.5')
+// not in the bundle info files any more, but still pinned.
+assert lock.contains('com.basistech.bbh.it.ranges:retired\t[1.0,)\t3.0')
+assert !new File(target, 'unlocked.lock').exists()
+def cache = new File(target, 'bbh-cache/version-ranges.txt').readLines()
+assert cache.any { it.startsWith('com.basistech.bbh.it.ranges:ranged\t[1.0, 2.0)\t1.5\t') }
+
+// the second execution finds both in the file the first one wrote.
+def counters = new JsonSlurper().parseText(new File(target, 'again-metrics.json').text).counters
+assert counters.rangeCacheHits == 2
+assert counters.rangeCacheMisses == 0
+
+def log = new File(basedir, 'build.log').text
+assert !log.contains('Ignoring')
+
+true
@@ -0,0 +1,39 @@
+import java.util.jar.Attributes
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+
+/*
+ * Install made-up bundles, with just the headers that wire them up, straight into the
+ * local repository as com.basistech.bbh.it.wiring:<name>:1.0.
+ */
+def install = { String name, Map<String, String> headers ->
+    def dir = new File(localRepositoryPath, "com/basistech/bbh/it/wiring/${name}/1.0")
+    dir.mkdirs()
+    new File(dir, "${name}-1.0.pom").text = """<project>
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>com.basistech.bbh.it.wiring</groupId>
+  <artifactId>${name}</artifactId>
+  <version>1.0</version>
+</project>
+"""
+    def manifest = new Manifest()
+    manifest.mainAttributes.put(Attributes.Name.MANIFEST_VERSION, '1.0')
+    manifest.mainAttributes.putValue('Bundle-ManifestVersion', '2')
+    manifest.mainAttributes.putValue('Bundle-SymbolicName', name)
+    manifest.mainAttributes.putValue('Bundle-Version', '1.0.0')
+    headers.each { k, v -> manifest.mainAttributes.putValue(k, v) }
+    new JarOutputStream(new FileOutputStream(new File(dir, "${name}-1.0.jar")), manifest).close()
+}
+
+install('api', ['Export-Package': 'com.acme.api;version="1.0.0"'])
+install('host', ['Export-Package': 'com.acme.host'])
+// attached to its host, so its export, and its needs, are the host's.
+install('host-fragment', ['Fragment-Host': 'host', 'Export-Package': 'com.acme.extra', 'Import-Package': 'com.acme.api'])
+install('consumer', [
+    'Import-Package': 'com.acme.api;version="[1.0,2)",com.acme.extra,com.acme.missing,'
+        + 'com.acme.optional;resolution:=optional,javax.xml.parsers,org.osgi.framework;version="1.5"',
+    'Require-Bundle': 'api;bundle-version="[1.0,2)",nope'])
+install('too-new', ['Import-Package': 'com.acme.api;version="[2.0,3)"'])
+install('orphan-fragment', ['Fragment-Host': 'no-such-host'])
+
+true
@@ -0,0 +1,17 @@
+def prefix = 'com.basistech.bbh.it.wiring-'
+def report = new File(basedir, 'target/wiring-report.txt').readLines()
+assert report[0] == '# 6 bundles, 4 problems, 1 unsatisfied optional requirements'
+def findings = report.drop(1) as Set
+assert findings == [
+    "${prefix}consumer-1.0.jar: Import-Package com.acme.missing is not exported by any bundle",
+    "${prefix}consumer-1.0.jar: Require-Bundle nope is not among the bundles",
+    "${prefix}too-new-1.0.jar: Import-Package com.acme.api;version=\"[2.0,3)\" is only exported at [1.0.0 from ${prefix}api-1.0.jar]",
+    "${prefix}orphan-fragment-1.0.jar: Fragment-Host no-such-host is not among the bundles",
+    "${prefix}consumer-1.0.jar: optional Import-Package com.acme.optional is not exported by any bundle",
+].collect { it.toString() } as Set
+// the fragment's export counts as its host's, so com.acme.extra, and the fragment's own import, are fine.
+
+def log = new File(basedir, 'build.log').text
+assert log.contains('4 bundle wiring problems; see')
+
+true
@@ -0,0 +1,152 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ArtifactId#matches} for a set of artifacts against many patterns,
+ * as in an include/exclude filter over a project's dependencies; and the same with
+ * the patterns compiled into {@link ArtifactPattern}s, as the filters do now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArtifactIdMatchBenchmark {
+    private static final String[] PATTERN_SHAPES = {
+        "com.example.group%d:artifact-%d",
+        "com.example.group%d:*",
+        "com.example.*:artifact-%d*",
+        "*:artifact-%d:jar:*",
+        "com.example.group%d:artifact-%d:jar::1.%d.*",
+        "org.other%d.**:*",
+    };
+
+    @Param({"200"})
+    int artifacts;
+
+    @Param({"10", "100", "1000"})
+    int patterns;
+
+    private ArtifactId[] artifactIds;
+    private ArtifactId[] patternIds;
+    private Artifact[] mavenArtifacts;
+    private ArtifactPattern[] compiledPatterns;
+    private List<ArtifactPattern> compiledPatternList;
+
+    @Setup
+    public void setup() {
+        artifactIds = new ArtifactId[artifacts];
+        for (int i = 0; i < artifacts; i++) {
+            String classifier = i % 7 == 0 ? "sources" : null;
+            artifactIds[i] = new ArtifactId("com.example.group" + (i % 20), "artifact-" + i, "jar", classifier, "1." + (i % 10) + ".0");
+        }
+        DefaultArtifactHandler handler = new DefaultArtifactHandler("jar");
+        mavenArtifacts = new Artifact[artifacts];
+        for (int i = 0; i < artifacts; i++) {
+            ArtifactId id = artifactIds[i];
+            mavenArtifacts[i] = new DefaultArtifact(id.getGroupId(), id.getArtifactId(), VersionRange.createFromVersion(id.getVersion()),
+                "compile", id.getType(), id.getClassifier(), handler);
+        }
+        patternIds = new ArtifactId[patterns];
+        compiledPatterns = new ArtifactPattern[patterns];
+        for (int i = 0; i < patterns; i++) {
+            String shape = PATTERN_SHAPES[i % PATTERN_SHAPES.length];
+            String text = String.format(shape, i, i * 3, i % 10);
+            patternIds[i] = new ArtifactId(text);
+            compiledPatterns[i] = ArtifactPattern.parse(text);
+        }
+        compiledPatternList = Arrays.asList(compiledPatterns);
+    }
+
+    /**
+     * Every artifact against every pattern.
+     */
+    @Benchmark
+    public int matchAll() {
+        int count = 0;
+        for (ArtifactId artifactId : artifactIds) {
+            for (ArtifactId pattern : patternIds) {
+                if (artifactId.matches(pattern)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Each artifact against the patterns up to the first match, as a filter does.
+     */
+    @Benchmark
+    public int matchAny() {
+        int count = 0;
+        for (ArtifactId artifactId : artifactIds) {
+            for (ArtifactId pattern : patternIds) {
+                if (artifactId.matches(pattern)) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Every artifact against every compiled pattern.
+     */
+    @Benchmark
+    public int matchAllCompiled() {
+        int count = 0;
+        for (Artifact artifact : mavenArtifacts) {
+            for (ArtifactPattern pattern : compiledPatterns) {
+                if (pattern.matches(artifact)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Each artifact against the compiled patterns up to the first match, as the filters do now.
+     */
+    @Benchmark
+    public int matchAnyCompiled() {
+        int count = 0;
+        for (Artifact artifact : mavenArtifacts) {
+            if (ArtifactPattern.matchesAny(compiledPatternList, artifact)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
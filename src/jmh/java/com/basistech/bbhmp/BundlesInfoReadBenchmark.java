@@ -0,0 +1,82 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BundlesInfo#read} on a large generated spec file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BundlesInfoReadBenchmark {
+    @Param({"100", "1000", "10000"})
+    int bundles;
+
+    @Param({"10"})
+    int bundlesPerLevel;
+
+    private Path spec;
+
+    @Setup
+    public void setup() throws IOException {
+        spec = Files.createTempFile("bundles", ".xml");
+        try (Writer writer = Files.newBufferedWriter(spec, StandardCharsets.UTF_8)) {
+            writer.write("<bundles>\n");
+            for (int i = 0; i < bundles; i++) {
+                if (i % bundlesPerLevel == 0) {
+                    if (i > 0) {
+                        writer.write("  </level>\n");
+                    }
+                    // write the levels out of order, so that the sort has something to do.
+                    writer.write(String.format("  <level level='%d'>%n", (i * 7919) % (bundles + 1)));
+                }
+                String noStart = i % 5 == 0 ? " noStart='true'" : "";
+                writer.write(String.format("    <bundle%s>com.example.group%d/artifact-%d/${project.version}</bundle>%n", noStart, i % 50, i));
+            }
+            if (bundles > 0) {
+                writer.write("  </level>\n");
+            }
+            writer.write("</bundles>\n");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(spec);
+    }
+
+    @Benchmark
+    public BundlesInfo read() throws IOException {
+        return BundlesInfo.read(spec);
+    }
+}
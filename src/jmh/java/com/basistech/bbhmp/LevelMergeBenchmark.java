@@ -0,0 +1,96 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The level merge that {@code collect-bundles} does for each bundle as it processes
+ * the specs: the key for the artifact, the lookup, and the move to a lower level for a
+ * bundle that shows up more than once. The artifacts are already resolved, so this measures
+ * only the bookkeeping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LevelMergeBenchmark {
+    @Param({"1000", "5000", "20000"})
+    int bundles;
+
+    @Param({"100"})
+    int levels;
+
+    /**
+     * The percentage of entries that repeat an earlier bundle.
+     */
+    @Param({"0", "30"})
+    int duplicatePercent;
+
+    private Artifact[] artifacts;
+    private int[] entryLevels;
+    private boolean[] starts;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        DefaultArtifactHandler handler = new DefaultArtifactHandler("jar");
+        artifacts = new Artifact[bundles];
+        entryLevels = new int[bundles];
+        starts = new boolean[bundles];
+        int distinct = 0;
+        for (int i = 0; i < bundles; i++) {
+            if (distinct > 0 && random.nextInt(100) < duplicatePercent) {
+                artifacts[i] = artifacts[random.nextInt(i)];
+            } else {
+                String classifier = distinct % 9 == 0 ? "tests" : null;
+                artifacts[i] = new DefaultArtifact("com.example.group" + (distinct % 40), "artifact-" + distinct,
+                    VersionRange.createFromVersion("1." + (distinct % 10) + ".0"), "compile", "jar", classifier, handler);
+                distinct++;
+            }
+            entryLevels[i] = 1 + random.nextInt(levels);
+            starts[i] = random.nextBoolean();
+        }
+    }
+
+    @Benchmark
+    public BundleLevels merge() {
+        BundleLevels merged = new BundleLevels();
+        for (int i = 0; i < bundles; i++) {
+            GavKey gav = GavKey.of(artifacts[i]);
+            BundleSpec prior = merged.get(gav);
+            if (prior != null) {
+                merged.put(prior.atLevel(entryLevels[i]));
+            } else {
+                merged.put(new BundleSpec(gav, entryLevels[i], starts[i], gav + ".jar", null, BundleManifest.NONE, 0, null, null));
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The maven to OSGi version transform in {@link OsgiVersionMojo#execute}, over each of
+ * the version shapes that it handles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OsgiVersionBenchmark {
+    @Param({"1.2.3", "1.2", "1.2.3.beta_1-x", "1.2.3-SNAPSHOT", "7.15.0.c58.2", "7.15.0.c58.2-SNAPSHOT"})
+    String version;
+
+    @Param({"false", "true"})
+    boolean timestampQualifier;
+
+    private OsgiVersionMojo mojo;
+
+    @Setup
+    public void setup() {
+        mojo = new OsgiVersionMojo();
+        mojo.project = new MavenProject();
+        mojo.project.setVersion(version);
+        mojo.propertyName = "osgi-version";
+        mojo.timestampQualifier = timestampQualifier;
+        mojo.timestampSource = "session";
+    }
+
+    @Benchmark
+    public Object execute() throws MojoExecutionException {
+        mojo.execute();
+        return mojo.project.getProperties().get(mojo.propertyName);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.util.Locale;
+
+/**
+ * The kinds of archive that {@code collect-bundles} can write.
+ */
+enum ArchiveFormat {
+    ZIP("zip"),
+    TAR("tar"),
+    TAR_GZ("tar.gz");
+
+    final String extension;
+
+    ArchiveFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Look up a format by its extension: {@code zip}, {@code tar}, or {@code tar.gz}.
+     * @throws IllegalArgumentException if there is no such format.
+     */
+    static ArchiveFormat forName(String name) {
+        String wanted = name.trim().toLowerCase(Locale.ROOT);
+        for (ArchiveFormat format : values()) {
+            if (format.extension.equals(wanted)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("No archive format " + name);
+    }
+}
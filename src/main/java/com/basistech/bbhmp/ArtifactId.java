@@ -21,6 +21,8 @@ import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Dependency;
 import org.codehaus.plexus.util.SelectorUtils;
 
+import java.util.Objects;
+
 /**
  * @author Benjamin Bentmann
  */
@@ -107,4 +109,30 @@ class ArtifactId {
         return SelectorUtils.match(pattern, str);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ArtifactId that = (ArtifactId) o;
+        return groupId.equals(that.groupId)
+                && artifactId.equals(that.artifactId)
+                && type.equals(that.type)
+                && classifier.equals(that.classifier)
+                && version.equals(that.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(groupId, artifactId, type, classifier, version);
+    }
+
+    @Override
+    public String toString() {
+        return groupId + ":" + artifactId + ":" + type + ":" + classifier + ":" + version;
+    }
+
 }
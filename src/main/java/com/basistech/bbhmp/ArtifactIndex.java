@@ -0,0 +1,144 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.project.MavenProject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The project's dependencies and the reactor's artifacts, indexed for lookup by coordinates.
+ * Built once per execution; read-only afterwards, so it may be shared by the resolver threads.
+ */
+class ArtifactIndex {
+    private final Map<ArtifactId, List<Artifact>> artifacts = new HashMap<>();
+    private final Map<String, String> dependencyVersions = new HashMap<>();
+    private final Map<String, List<Artifact>> dependenciesByGroup = new TreeMap<>();
+
+    /**
+     * Candidates for a set of coordinates are kept in the order that a search would find them:
+     * the dependencies first, then each reactor project's main artifact and its attached artifacts.
+     */
+    ArtifactIndex(Collection<Artifact> dependencies, List<MavenProject> reactorProjects) {
+        for (Artifact dep : dependencies) {
+            add(dep);
+            String ga = dep.getGroupId() + ":" + dep.getArtifactId();
+            if (!dependencyVersions.containsKey(ga)) {
+                dependencyVersions.put(ga, dep.getVersion());
+            }
+            List<Artifact> group = dependenciesByGroup.get(dep.getGroupId());
+            if (group == null) {
+                group = new ArrayList<>();
+                dependenciesByGroup.put(dep.getGroupId(), group);
+            }
+            group.add(dep);
+        }
+        for (MavenProject p : reactorProjects == null ? Collections.<MavenProject>emptyList() : reactorProjects) {
+            if (p.getArtifact() != null) {
+                add(p.getArtifact());
+            }
+            for (Artifact a : p.getAttachedArtifacts()) {
+                add(a);
+            }
+        }
+    }
+
+    private void add(Artifact artifact) {
+        ArtifactId id = new ArtifactId(artifact);
+        List<Artifact> candidates = artifacts.get(id);
+        if (candidates == null) {
+            candidates = new ArrayList<>(1);
+            artifacts.put(id, candidates);
+        }
+        candidates.add(artifact);
+    }
+
+    /**
+     * Find the first artifact with the same groupId, artifactId, type, classifier and version
+     * that has a file.
+     * @return the artifact, or null if there is none.
+     */
+    Artifact find(Artifact artifact) {
+        List<Artifact> candidates = artifacts.get(new ArtifactId(artifact));
+        if (candidates != null) {
+            for (Artifact candidate : candidates) {
+                if (candidate.getFile() != null && candidate.getFile().isFile()) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the version of the first dependency with this groupId and artifactId, or null.
+     */
+    String dependencyVersion(String groupId, String artifactId) {
+        return dependencyVersions.get(groupId + ":" + artifactId);
+    }
+
+    /**
+     * Find the dependencies that match a pattern and none of the excludes. A pattern with a literal
+     * groupId looks at that group alone; otherwise the groupId is matched once per group.
+     * @return the matches, sorted by groupId, artifactId, classifier and version.
+     */
+    List<Artifact> dependencies(ArtifactPattern pattern, List<ArtifactPattern> excludes) {
+        List<Artifact> matches = new ArrayList<>();
+        String literal = pattern.getLiteralGroupId();
+        if (literal != null) {
+            addMatches(dependenciesByGroup.get(literal), pattern, excludes, matches);
+        } else {
+            for (Map.Entry<String, List<Artifact>> me : dependenciesByGroup.entrySet()) {
+                if (pattern.matchesGroupId(me.getKey())) {
+                    addMatches(me.getValue(), pattern, excludes, matches);
+                }
+            }
+        }
+        Collections.sort(matches, new Comparator<Artifact>() {
+            @Override
+            public int compare(Artifact o1, Artifact o2) {
+                int c = o1.getGroupId().compareTo(o2.getGroupId());
+                if (c == 0) {
+                    c = o1.getArtifactId().compareTo(o2.getArtifactId());
+                }
+                if (c == 0) {
+                    c = String.valueOf(o1.getClassifier()).compareTo(String.valueOf(o2.getClassifier()));
+                }
+                return c != 0 ? c : o1.getVersion().compareTo(o2.getVersion());
+            }
+        });
+        return matches;
+    }
+
+    private static void addMatches(List<Artifact> candidates, ArtifactPattern pattern, List<ArtifactPattern> excludes, List<Artifact> matches) {
+        if (candidates == null) {
+            return;
+        }
+        for (Artifact candidate : candidates) {
+            if (pattern.matches(candidate) && !ArtifactPattern.matchesAny(excludes, candidate)) {
+                matches.add(candidate);
+            }
+        }
+    }
+}
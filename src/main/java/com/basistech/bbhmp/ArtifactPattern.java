@@ -0,0 +1,148 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.artifact.Artifact;
+import org.codehaus.plexus.util.SelectorUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A pattern for artifacts, compiled once so that it can be matched against many of them.
+ * It is written either like a bundle info entry, {@code groupId/artifactId/version} or
+ * {@code groupId/artifactId/classifier/version}, where the version may be {@code -dependency-},
+ * or like an {@link ArtifactId}, {@code groupId:artifactId:type:classifier:version}.
+ * Any part may use the {@code *} and {@code ?} wildcards of {@link SelectorUtils#match}.
+ * Both forms mean jars, unless the colon form names a type: a pattern such as {@code com.acme:*} must not
+ * pick up poms or zips, which are no bundles. The slash form with three parts means jars without a classifier;
+ * with fewer, any version. A part that is just {@code *} costs nothing to match, and a part without wildcards is a
+ * string comparison; only the real wildcards go through {@link SelectorUtils}.
+ */
+final class ArtifactPattern {
+    private final String text;
+    private final Part groupId;
+    private final Part artifactId;
+    private final Part type;
+    private final Part classifier;
+    private final Part version;
+
+    private ArtifactPattern(String text, ArtifactId id) {
+        this.text = text;
+        groupId = new Part(id.getGroupId());
+        artifactId = new Part(id.getArtifactId());
+        type = new Part(id.getType());
+        classifier = new Part(id.getClassifier());
+        version = new Part(id.getVersion());
+    }
+
+    static ArtifactPattern parse(String text) {
+        String trimmed = text.trim();
+        if (trimmed.indexOf(':') != -1 || trimmed.indexOf('/') == -1) {
+            ArtifactId id = new ArtifactId(trimmed);
+            if (trimmed.split(":", -1).length < 4) {
+                id = new ArtifactId(id.getGroupId(), id.getArtifactId(), "jar", id.getClassifier(), id.getVersion());
+            }
+            return new ArtifactPattern(trimmed, id);
+        }
+        String[] pieces = trimmed.split("/", -1);
+        String classifier = pieces.length == 4 ? pieces[2] : pieces.length == 3 ? "" : "*";
+        String version = pieces.length >= 3 ? pieces[pieces.length - 1] : "*";
+        if ("-dependency-".equals(version)) {
+            version = "*";
+        }
+        return new ArtifactPattern(trimmed, new ArtifactId(pieces[0], pieces.length > 1 ? pieces[1] : "*", "jar", classifier, version));
+    }
+
+    /**
+     * @param texts patterns, each of which may be a comma-separated list; null for none.
+     */
+    static List<ArtifactPattern> parseAll(List<String> texts) {
+        if (texts == null) {
+            return Collections.emptyList();
+        }
+        List<ArtifactPattern> patterns = new ArrayList<>();
+        for (String text : texts) {
+            for (String piece : text.split(",")) {
+                if (!piece.trim().isEmpty()) {
+                    patterns.add(parse(piece));
+                }
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * @return whether a bundle info entry is a pattern rather than the coordinates of one bundle.
+     */
+    static boolean isPattern(String entry) {
+        return entry.indexOf('*') != -1 || entry.indexOf('?') != -1 || entry.indexOf(':') != -1;
+    }
+
+    /**
+     * @return the groupId, if this pattern matches just one; otherwise null.
+     */
+    String getLiteralGroupId() {
+        return groupId.wildcard ? null : groupId.pattern;
+    }
+
+    boolean matchesGroupId(String value) {
+        return groupId.matches(value);
+    }
+
+    boolean matches(Artifact artifact) {
+        return groupId.matches(artifact.getGroupId())
+            && artifactId.matches(artifact.getArtifactId())
+            && type.matches(artifact.getType())
+            && classifier.matches(artifact.getClassifier())
+            && version.matches(artifact.getVersion());
+    }
+
+    static boolean matchesAny(List<ArtifactPattern> patterns, Artifact artifact) {
+        for (ArtifactPattern pattern : patterns) {
+            if (pattern.matches(artifact)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static final class Part {
+        final String pattern;
+        final boolean any;
+        final boolean wildcard;
+
+        Part(String pattern) {
+            this.pattern = pattern;
+            any = "*".equals(pattern);
+            wildcard = pattern.indexOf('*') != -1 || pattern.indexOf('?') != -1;
+        }
+
+        boolean matches(String value) {
+            if (any) {
+                return true;
+            }
+            String v = value == null ? "" : value;
+            return wildcard ? SelectorUtils.match(pattern, v) : pattern.equals(v);
+        }
+    }
+}
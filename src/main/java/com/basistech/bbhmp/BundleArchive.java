@@ -0,0 +1,120 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An archive that bundles are written straight into, in place of the output directory.
+ * Entries go in the order they are added.
+ */
+abstract class BundleArchive implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private int entries;
+    private long bytesWritten;
+
+    /**
+     * Start a new archive in a file.
+     */
+    static BundleArchive create(ArchiveFormat format, Path file) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+        switch (format) {
+        case ZIP:
+            return new ZipBundleArchive(out);
+        case TAR:
+            return new TarBundleArchive(out);
+        case TAR_GZ:
+            return new TarBundleArchive(new GZIPOutputStream(out, BUFFER_SIZE));
+        default:
+            out.close();
+            throw new IllegalArgumentException("No archive format " + format);
+        }
+    }
+
+    /**
+     * Add a file, computing digests of it on the way through.
+     * @return the digests, in hex, by algorithm.
+     */
+    abstract Map<String, String> addFile(String name, File file, List<String> algorithms) throws IOException;
+
+    /**
+     * Add an entry with the given content.
+     * @param time the modification time for the entry, in milliseconds.
+     */
+    abstract void addBytes(String name, byte[] content, long time) throws IOException;
+
+    int getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the bytes of entry content written, before any compression.
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Copy a file's content to the archive, which is expecting exactly its current length.
+     */
+    Map<String, String> copyContent(File file, OutputStream out, List<String> algorithms) throws IOException {
+        MessageDigest[] digests = Digests.newDigests(algorithms);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long expected = file.length();
+        long count = 0;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, n);
+                }
+                count += n;
+            }
+        }
+        if (count != expected) {
+            throw new IOException(String.format("%s changed size from %d to %d while it was being archived", file, expected, count));
+        }
+        entryWritten(count);
+        return Digests.toHex(algorithms, digests);
+    }
+
+    void entryWritten(long size) {
+        entries++;
+        bytesWritten += size;
+    }
+
+    /**
+     * @return whether an entry is already compressed, so that compressing it again is a waste of time.
+     */
+    static boolean isCompressed(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".jar") || lower.endsWith(".zip");
+    }
+}
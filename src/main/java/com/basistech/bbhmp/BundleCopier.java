@@ -0,0 +1,303 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Puts bundle artifacts into the output directory, leaving alone
+ * any output file that already matches its artifact. When asked for digests, it computes
+ * them as it copies, and can leave them next to the bundles in {@code .sha256} (or {@code .sha1})
+ * files, where the next build finds them instead of reading the bundle again.
+ */
+class BundleCopier {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Log log;
+    private final boolean skipUpToDate;
+    private final CopyStrategy strategy;
+    private final List<String> algorithms;
+    private final boolean checksumFiles;
+    // copies run on the staging threads, so the bookkeeping has to be atomic.
+    private final AtomicBoolean linkFailureReported = new AtomicBoolean();
+    private final AtomicInteger copied = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicLong bytesCopied = new AtomicLong();
+
+    /**
+     * @param algorithms the digests to compute, e.g. {@link Digests#SHA_256}.
+     * @param checksumFiles whether to write each digest to a file next to the bundle.
+     */
+    BundleCopier(Log log, boolean skipUpToDate, CopyStrategy strategy, List<String> algorithms, boolean checksumFiles) {
+        this.log = log;
+        this.skipUpToDate = skipUpToDate;
+        this.strategy = strategy;
+        this.algorithms = algorithms;
+        this.checksumFiles = checksumFiles;
+    }
+
+    /**
+     * Copy (or link) an artifact, unless the destination is already up to date.
+     * @return the digests of the bundle, in hex, by algorithm; empty when none were asked for.
+     */
+    Map<String, String> copy(File source, File dest) throws IOException {
+        if (skipUpToDate && isUpToDate(source, dest)) {
+            log.debug("Up to date " + dest);
+            skipped.incrementAndGet();
+            Map<String, String> digests = recordedDigests(dest);
+            if (digests == null) {
+                digests = digest(dest);
+                writeChecksumFiles(dest, digests);
+            }
+            return digests;
+        }
+        Path destPath = dest.toPath();
+        /*
+         * Always start from nothing. Writing into an existing hard link
+         * would write into the local repository.
+         */
+        Files.deleteIfExists(destPath);
+        Files.createDirectories(destPath.getParent());
+
+        boolean linked = false;
+        if (strategy == CopyStrategy.HARDLINK || strategy == CopyStrategy.SYMLINK) {
+            linked = link(source, destPath);
+        }
+        Map<String, String> digests;
+        if (linked) {
+            digests = digest(source);
+        } else {
+            log.info("Copying " + source.getAbsolutePath() + " to " + dest);
+            if (!algorithms.isEmpty()) {
+                // the bytes have to pass through here anyway to be digested.
+                digests = copyAndDigest(source.toPath(), destPath);
+            } else {
+                if (strategy == CopyStrategy.TRANSFER) {
+                    transfer(source.toPath(), destPath);
+                } else {
+                    FileUtils.copyFile(source, dest);
+                }
+                digests = Collections.emptyMap();
+            }
+            // make the next up-to-date check a cheap one.
+            dest.setLastModified(source.lastModified());
+            bytesCopied.addAndGet(dest.length());
+        }
+        writeChecksumFiles(dest, digests);
+        copied.incrementAndGet();
+        return digests;
+    }
+
+    int getCopied() {
+        return copied.get();
+    }
+
+    int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the bytes actually copied; links do not count.
+     */
+    long getBytesCopied() {
+        return bytesCopied.get();
+    }
+
+    CopyStrategy getStrategy() {
+        return strategy;
+    }
+
+    private boolean link(File source, Path dest) {
+        try {
+            if (strategy == CopyStrategy.HARDLINK) {
+                Files.createLink(dest, source.toPath());
+            } else {
+                Files.createSymbolicLink(dest, source.getAbsoluteFile().toPath());
+            }
+            log.info("Linked " + source.getAbsolutePath() + " to " + dest);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // typically, the local repository is on some other file system.
+            String message = String.format("Cannot %s %s to %s (%s); copying instead", strategy.name().toLowerCase(Locale.ROOT), source, dest, e.getMessage());
+            if (linkFailureReported.compareAndSet(false, true)) {
+                log.warn(message);
+            } else {
+                log.debug(message);
+            }
+            return false;
+        }
+    }
+
+    private Map<String, String> copyAndDigest(Path source, Path dest) throws IOException {
+        MessageDigest[] digests = Digests.newDigests(algorithms);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(dest, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, count);
+                }
+            }
+        }
+        return Digests.toHex(algorithms, digests);
+    }
+
+    private Map<String, String> digest(File file) throws IOException {
+        if (algorithms.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        MessageDigest[] digests = Digests.newDigests(algorithms);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, count);
+                }
+            }
+        }
+        return Digests.toHex(algorithms, digests);
+    }
+
+    private void writeChecksumFiles(File dest, Map<String, String> digests) throws IOException {
+        if (!checksumFiles) {
+            return;
+        }
+        for (Map.Entry<String, String> me : digests.entrySet()) {
+            // the format of sha256sum and friends, so that they can check it; they skip the comment.
+            String text = stamp(dest) + "\n" + me.getValue() + "  " + dest.getName() + "\n";
+            AtomicFiles.writeIfChanged(checksumFile(dest, me.getKey()).toPath(), text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * @return the digests from the checksum files next to the bundle, if there is one for every
+     * algorithm and each was computed for the bundle as it is now; otherwise null.
+     */
+    private Map<String, String> recordedDigests(File dest) throws IOException {
+        if (!checksumFiles) {
+            return algorithms.isEmpty() ? Collections.<String, String>emptyMap() : null;
+        }
+        Map<String, String> digests = new LinkedHashMap<>();
+        for (String algorithm : algorithms) {
+            String digest = recordedDigest(dest, algorithm);
+            if (digest == null) {
+                return null;
+            }
+            digests.put(algorithm, digest);
+        }
+        return digests;
+    }
+
+    /**
+     * @return the digest in a checksum file, if its comment names the size and time that the bundle
+     * has now; the time of the checksum file itself proves nothing, since the bundle's time is set
+     * back to the artifact's when it is copied.
+     */
+    private String recordedDigest(File dest, String algorithm) throws IOException {
+        File file = checksumFile(dest, algorithm);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        if (lines.size() != 2 || !lines.get(0).equals(stamp(dest))) {
+            return null;
+        }
+        String content = lines.get(1).trim();
+        int space = content.indexOf(' ');
+        return space == -1 ? content : content.substring(0, space);
+    }
+
+    /**
+     * @return the comment line of a checksum file, with the size and time of the bundle it was computed for.
+     */
+    private static String stamp(File dest) {
+        return String.format(Locale.ROOT, "# size %d modified %d", dest.length(), dest.lastModified());
+    }
+
+    private static File checksumFile(File dest, String algorithm) {
+        String extension = algorithm.replace("-", "").toLowerCase(Locale.ROOT);
+        return new File(dest.getParentFile(), dest.getName() + "." + extension);
+    }
+
+    private static void transfer(Path source, Path dest) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * A link to the artifact is up to date for the linking strategies; for the copying
+     * strategies, the output must be a file of its own.
+     * Same size and same time is good enough; same size and a different time
+     * calls for a look at the contents, where a checksum file saves reading the output.
+     */
+    private boolean isUpToDate(File source, File dest) throws IOException {
+        Path destPath = dest.toPath();
+        if (!Files.exists(destPath)) {
+            return false;
+        }
+        boolean linking = strategy == CopyStrategy.HARDLINK || strategy == CopyStrategy.SYMLINK;
+        if (Files.isSameFile(source.toPath(), destPath)) {
+            return linking;
+        }
+        if (Files.isSymbolicLink(destPath)) {
+            return false;
+        }
+        if (!dest.isFile() || dest.length() != source.length()) {
+            return false;
+        }
+        if (dest.lastModified() == source.lastModified()) {
+            return true;
+        }
+        String destDigest = checksumFiles ? recordedDigest(dest, Digests.SHA_256) : null;
+        if (destDigest == null) {
+            destDigest = Digests.hex(Digests.sha256(dest));
+        }
+        if (destDigest.equals(Digests.hex(Digests.sha256(source)))) {
+            dest.setLastModified(source.lastModified());
+            return true;
+        }
+        return false;
+    }
+}
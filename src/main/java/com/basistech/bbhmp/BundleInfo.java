@@ -20,11 +20,25 @@ package com.basistech.bbhmp;
 class BundleInfo {
     final boolean start;
     final String gav;
+    /**
+     * For a pattern entry, the comma-separated patterns it must not expand to; otherwise null.
+     */
+    final String exclude;
+    /**
+     * Where the entry came from, as {@code file:line}, for messages; null if unknown.
+     */
+    final String location;
     private String filename;
 
     BundleInfo(boolean start, String gav) {
+        this(start, gav, null, null);
+    }
+
+    BundleInfo(boolean start, String gav, String exclude, String location) {
         this.start = start;
         this.gav = gav;
+        this.exclude = exclude;
+        this.location = location;
     }
 
     public String getFilename() {
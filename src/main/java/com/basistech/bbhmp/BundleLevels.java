@@ -0,0 +1,95 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The merged bundles, by gav and by start level. Each level keeps its bundles in the
+ * order they were put there, so moving a bundle to another level is a remove from one
+ * linked map and an append to another, not a search through a list.
+ */
+class BundleLevels {
+    private final Map<GavKey, BundleSpec> bundlesByGav = new HashMap<>();
+    private final Map<Integer, Map<GavKey, BundleSpec>> bundlesByLevel = new TreeMap<>(); // keep those levels in order
+
+    /**
+     * @return the bundle for a gav, or null if there is none yet.
+     */
+    BundleSpec get(GavKey gav) {
+        return bundlesByGav.get(gav);
+    }
+
+    /**
+     * Put a bundle at the end of its level. A bundle that is already present keeps
+     * everything but its level, and moves to the lower of its old level and the new one.
+     * @return the bundle as placed.
+     */
+    BundleSpec put(BundleSpec bundle) {
+        BundleSpec prior = bundlesByGav.get(bundle.gav);
+        BundleSpec spec = bundle;
+        if (prior != null) {
+            bundlesByLevel.get(prior.level).remove(prior.gav);
+            spec = prior.atLevel(Math.min(prior.level, bundle.level));
+        }
+        bundlesByGav.put(spec.gav, spec);
+
+        Map<GavKey, BundleSpec> levelSpecs = bundlesByLevel.get(spec.level);
+        if (levelSpecs == null) {
+            levelSpecs = new LinkedHashMap<>();
+            bundlesByLevel.put(spec.level, levelSpecs);
+        }
+        levelSpecs.put(spec.gav, spec);
+        return spec;
+    }
+
+    /**
+     * @return the levels, in order. A level that has lost all its bundles to lower levels
+     * is still here, with no bundles.
+     */
+    Set<Integer> levels() {
+        return bundlesByLevel.keySet();
+    }
+
+    /**
+     * @return the bundles at a level, in the order they were put there.
+     */
+    Collection<BundleSpec> at(int level) {
+        return bundlesByLevel.get(level).values();
+    }
+
+    /**
+     * @return all the bundles, level by level, as they appear in bundles.xml.
+     */
+    List<BundleSpec> inOrder() {
+        List<BundleSpec> bundles = new ArrayList<>(bundlesByGav.size());
+        for (Map<GavKey, BundleSpec> levelSpecs : bundlesByLevel.values()) {
+            bundles.addAll(levelSpecs.values());
+        }
+        return bundles;
+    }
+
+    int size() {
+        return bundlesByGav.size();
+    }
+}
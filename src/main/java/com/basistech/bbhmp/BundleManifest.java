@@ -0,0 +1,110 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * The OSGi headers that we care about from a bundle's manifest.
+ */
+class BundleManifest {
+    static final String BUNDLE_MANIFEST_VERSION = "Bundle-ManifestVersion";
+    static final String BUNDLE_SYMBOLIC_NAME = "Bundle-SymbolicName";
+    static final String BUNDLE_VERSION = "Bundle-Version";
+    static final String FRAGMENT_HOST = "Fragment-Host";
+    static final String EXPORT_PACKAGE = "Export-Package";
+    static final String IMPORT_PACKAGE = "Import-Package";
+    static final String REQUIRE_BUNDLE = "Require-Bundle";
+
+    /**
+     * The headers we keep. {@link ManifestCache} keys its file format on this list,
+     * so adding a header here invalidates existing caches.
+     */
+    static final List<String> HEADERS = Collections.unmodifiableList(Arrays.asList(
+        BUNDLE_MANIFEST_VERSION,
+        BUNDLE_SYMBOLIC_NAME,
+        BUNDLE_VERSION,
+        FRAGMENT_HOST,
+        EXPORT_PACKAGE,
+        IMPORT_PACKAGE,
+        REQUIRE_BUNDLE
+    ));
+
+    /**
+     * The absent manifest.
+     */
+    static final BundleManifest NONE = new BundleManifest(false, Collections.<String, String>emptyMap());
+
+    private final boolean present;
+    private final Map<String, String> headers;
+
+    BundleManifest(boolean present, Map<String, String> headers) {
+        this.present = present;
+        this.headers = headers;
+    }
+
+    /**
+     * @param manifest a manifest, or null for a jar without one.
+     */
+    static BundleManifest of(Manifest manifest) {
+        if (manifest == null) {
+            return NONE;
+        }
+        Attributes attributes = manifest.getMainAttributes();
+        Map<String, String> headers = new TreeMap<>();
+        for (String name : HEADERS) {
+            // getValue is case-insensitive.
+            String value = attributes.getValue(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return new BundleManifest(true, headers);
+    }
+
+    boolean isPresent() {
+        return present;
+    }
+
+    /**
+     * @return the value of a header, or null if it is missing.
+     */
+    String get(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * @return the symbolic name, without any directives or attributes; null if there is none.
+     */
+    String getSymbolicName() {
+        String value = headers.get(BUNDLE_SYMBOLIC_NAME);
+        if (value == null) {
+            return null;
+        }
+        int semi = value.indexOf(';');
+        return (semi == -1 ? value : value.substring(0, semi)).trim();
+    }
+
+    Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+}
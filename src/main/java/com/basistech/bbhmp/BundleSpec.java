@@ -15,22 +15,41 @@
 */
 package com.basistech.bbhmp;
 
+import java.io.File;
 import java.util.Objects;
 
 /**
- * A specification of a single bundle as read from an input XML file.
+ * A single bundle, as staged in the output.
  */
 class BundleSpec {
-    final String gav;
+    final GavKey gav;
     final int level;
     final boolean start; // we will calculate as needed.
     final String filename;
+    final File file; // the artifact.
+    final BundleManifest manifest;
+    final long size;
+    final String sha256; // hex, or null when we did not compute it.
+    final String sha1; // likewise.
 
-    BundleSpec(String gav, int level, boolean start, String filename) {
+    BundleSpec(GavKey gav, int level, boolean start, String filename, File file, BundleManifest manifest,
+               long size, String sha256, String sha1) {
         this.gav = gav;
         this.level = level;
         this.start = start;
         this.filename = filename;
+        this.file = file;
+        this.manifest = manifest;
+        this.size = size;
+        this.sha256 = sha256;
+        this.sha1 = sha1;
+    }
+
+    /**
+     * @return this bundle at another level.
+     */
+    BundleSpec atLevel(int newLevel) {
+        return new BundleSpec(gav, newLevel, start, filename, file, manifest, size, sha256, sha1);
     }
 
     @Override
@@ -0,0 +1,233 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Who provides what among a set of bundles, from their manifests: the bundles that export
+ * each package, at what versions, and the bundles with each symbolic name. A fragment's exports
+ * and needs belong to its host, when the host is in the set.
+ */
+class BundleWiring {
+    private final List<BundleSpec> bundles;
+    private final Map<GavKey, Integer> positions = new HashMap<>();
+    private final Map<String, List<BundleSpec>> bySymbolicName = new HashMap<>();
+    private final Map<String, List<Export>> exports = new HashMap<>();
+
+    /**
+     * A package, as exported by a bundle.
+     */
+    static final class Export {
+        final BundleSpec bundle;
+        final OsgiVersion version;
+
+        Export(BundleSpec bundle, OsgiVersion version) {
+            this.bundle = bundle;
+            this.version = version;
+        }
+    }
+
+    BundleWiring(List<BundleSpec> bundles) {
+        this.bundles = bundles;
+        for (int i = 0; i < bundles.size(); i++) {
+            BundleSpec bundle = bundles.get(i);
+            positions.put(bundle.gav, i);
+            String name = bundle.manifest.getSymbolicName();
+            if (name != null) {
+                add(bySymbolicName, name, bundle);
+            }
+        }
+        for (BundleSpec bundle : bundles) {
+            List<BundleSpec> providers = owners(bundle);
+            for (OsgiHeader.Clause clause : OsgiHeader.parse(bundle.manifest.get(BundleManifest.EXPORT_PACKAGE))) {
+                String version = clause.attributes.get("version");
+                if (version == null) {
+                    version = clause.attributes.get("specification-version");
+                }
+                OsgiVersion exportVersion = version(version);
+                for (String pkg : clause.paths) {
+                    for (BundleSpec provider : providers) {
+                        List<Export> list = exports.get(pkg);
+                        if (list == null) {
+                            list = new ArrayList<>(1);
+                            exports.put(pkg, list);
+                        }
+                        list.add(new Export(provider, exportVersion));
+                    }
+                }
+            }
+        }
+    }
+
+    List<BundleSpec> getBundles() {
+        return bundles;
+    }
+
+    /**
+     * @return the bundles with a symbolic name; empty if there are none.
+     */
+    List<BundleSpec> named(String symbolicName) {
+        List<BundleSpec> named = bySymbolicName.get(symbolicName);
+        return named == null ? Collections.<BundleSpec>emptyList() : named;
+    }
+
+    /**
+     * @return the exports of a package, in the order of the bundles; empty if there are none.
+     */
+    List<Export> exports(String pkg) {
+        List<Export> list = exports.get(pkg);
+        return list == null ? Collections.<Export>emptyList() : list;
+    }
+
+    /**
+     * @return the bundles that export a package at a version in the range.
+     */
+    List<BundleSpec> exporters(String pkg, OsgiVersionRange range) {
+        List<BundleSpec> exporters = new ArrayList<>();
+        for (Export export : exports(pkg)) {
+            if (range.includes(export.version) && !exporters.contains(export.bundle)) {
+                exporters.add(export.bundle);
+            }
+        }
+        return exporters;
+    }
+
+    /**
+     * @return the bundles with a symbolic name at a bundle version in the range.
+     */
+    List<BundleSpec> named(String symbolicName, OsgiVersionRange range) {
+        List<BundleSpec> matches = new ArrayList<>();
+        for (BundleSpec bundle : named(symbolicName)) {
+            if (range.includes(version(bundle.manifest.get(BundleManifest.BUNDLE_VERSION)))) {
+                matches.add(bundle);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the hosts of a fragment that are in the set; empty for a bundle that is not a fragment,
+     * and for a fragment whose host is missing.
+     */
+    List<BundleSpec> hosts(BundleSpec bundle) {
+        List<OsgiHeader.Clause> clauses = OsgiHeader.parse(bundle.manifest.get(BundleManifest.FRAGMENT_HOST));
+        if (clauses.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return named(clauses.get(0).paths.get(0));
+    }
+
+    /**
+     * @return the bundles whose needs and exports are this bundle's: its hosts, for an attached fragment,
+     * otherwise just the bundle.
+     */
+    List<BundleSpec> owners(BundleSpec bundle) {
+        List<BundleSpec> hosts = hosts(bundle);
+        return hosts.isEmpty() ? Collections.singletonList(bundle) : hosts;
+    }
+
+    int position(BundleSpec bundle) {
+        return positions.get(bundle.gav);
+    }
+
+    /**
+     * @return for each bundle, by position, the positions of the other bundles that provide what it
+     * needs: the exporters of the packages it imports, and the bundles it requires. The needs of an
+     * attached fragment are its hosts', and the fragment itself needs nothing.
+     */
+    int[][] dependencies() {
+        List<Set<Integer>> needs = new ArrayList<>();
+        for (int i = 0; i < bundles.size(); i++) {
+            needs.add(new LinkedHashSet<Integer>());
+        }
+        for (BundleSpec bundle : bundles) {
+            Set<Integer> providers = new LinkedHashSet<>();
+            for (OsgiHeader.Clause clause : OsgiHeader.parse(bundle.manifest.get(BundleManifest.IMPORT_PACKAGE))) {
+                OsgiVersionRange range = range(clause.attributes.get("version"));
+                for (String pkg : clause.paths) {
+                    for (BundleSpec exporter : exporters(pkg, range)) {
+                        providers.add(position(exporter));
+                    }
+                }
+            }
+            for (OsgiHeader.Clause clause : OsgiHeader.parse(bundle.manifest.get(BundleManifest.REQUIRE_BUNDLE))) {
+                OsgiVersionRange range = range(clause.attributes.get("bundle-version"));
+                for (String name : clause.paths) {
+                    for (BundleSpec required : named(name, range)) {
+                        providers.add(position(required));
+                    }
+                }
+            }
+            for (BundleSpec owner : owners(bundle)) {
+                int position = position(owner);
+                for (Integer provider : providers) {
+                    if (provider != position) {
+                        needs.get(position).add(provider);
+                    }
+                }
+            }
+        }
+        int[][] result = new int[bundles.size()][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new int[needs.get(i).size()];
+            int j = 0;
+            for (Integer provider : needs.get(i)) {
+                result[i][j++] = provider;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the version, or 0.0.0 for one that is missing or invalid.
+     */
+    static OsgiVersion version(String text) {
+        try {
+            return OsgiVersion.parse(text);
+        } catch (IllegalArgumentException e) {
+            return OsgiVersion.ZERO;
+        }
+    }
+
+    /**
+     * @return the range, or any version for one that is missing or invalid.
+     */
+    static OsgiVersionRange range(String text) {
+        try {
+            return OsgiVersionRange.parse(text);
+        } catch (IllegalArgumentException e) {
+            return OsgiVersionRange.ANY;
+        }
+    }
+
+    private static void add(Map<String, List<BundleSpec>> map, String key, BundleSpec bundle) {
+        List<BundleSpec> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+        }
+        if (!list.contains(bundle)) {
+            list.add(bundle);
+        }
+    }
+}
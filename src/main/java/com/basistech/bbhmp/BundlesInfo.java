@@ -19,6 +19,7 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -31,37 +32,68 @@ import java.util.List;
 /**
  * Represent the data from a bundle directory. This is very simple; with any luck
  * it will stay that way.
+ * Besides its levels, a file may {@code <include>} other files, by paths relative to itself;
+ * {@link SpecLoader} follows them.
  *
  */
 class BundlesInfo {
+    /*
+     * Configured once; creating readers from a configured factory is safe from several threads.
+     */
+    private static final XMLInputFactory FACTORY = newFactory();
+
     final List<LevelBundles> levels;
+    final List<String> includes;
 
     BundlesInfo(List<LevelBundles> levels) {
+        this(levels, Collections.<String>emptyList());
+    }
+
+    BundlesInfo(List<LevelBundles> levels, List<String> includes) {
         this.levels = levels;
+        this.includes = includes;
+    }
+
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
     }
 
     static BundlesInfo read(Path xmlFile) throws IOException {
+        return parse(xmlFile.toAbsolutePath().toString(), Files.readAllBytes(xmlFile));
+    }
+
+    /**
+     * @param systemId where the content came from, for messages.
+     */
+    static BundlesInfo parse(String systemId, byte[] content) throws IOException {
         List<LevelBundles> levels = new ArrayList<>();
+        List<String> includes = new ArrayList<>();
         XMLStreamReader reader = null;
-        try (InputStream is = Files.newInputStream(xmlFile)) {
-            XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
-            xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
-            reader = xmlInputFactory.createXMLStreamReader(xmlFile.toAbsolutePath().toString(), is);
+        try (InputStream is = new ByteArrayInputStream(content)) {
+            reader = FACTORY.createXMLStreamReader(systemId, is);
             reader.nextTag();
             reader.require(XMLEvent.START_ELEMENT, null, "bundles");
             while (reader.nextTag() == XMLEvent.START_ELEMENT) {
+                if ("include".equals(reader.getLocalName())) {
+                    includes.add(reader.getElementText().trim());
+                    continue;
+                }
                 reader.require(XMLEvent.START_ELEMENT, null, "level");
                 int level = Integer.parseInt(reader.getAttributeValue(null, "level"));
                 List<BundleInfo> bundleInfos = new ArrayList<>();
                 while (reader.nextTag() == XMLEvent.START_ELEMENT) {
                     reader.require(XMLEvent.START_ELEMENT, null, "bundle");
                     boolean start = !Boolean.parseBoolean(reader.getAttributeValue(null, "noStart"));
+                    String exclude = reader.getAttributeValue(null, "exclude");
+                    String location = systemId + ":" + reader.getLocation().getLineNumber();
                     reader.next();
                     if (!reader.isCharacters()) {
                         throw new IOException("No bundle filename text at " + reader.getLocation().toString());
                     }
                     String filename = reader.getText();
-                    BundleInfo bundleInfo = new BundleInfo(start, filename);
+                    BundleInfo bundleInfo = new BundleInfo(start, filename, exclude, location);
                     bundleInfos.add(bundleInfo);
                     reader.nextTag();
                     reader.require(XMLEvent.END_ELEMENT, null, "bundle");
@@ -87,6 +119,6 @@ class BundlesInfo {
                 return Integer.compare(o1.level, o2.level);
             }
         });
-        return new BundlesInfo(levels);
+        return new BundlesInfo(levels, includes);
     }
 }
@@ -0,0 +1,169 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where the bundle collector spends its time. Phases that run on several threads at once
+ * (resolution, for one) accumulate the time of all of them, so the phases can add up to
+ * more than the elapsed time.
+ */
+class CollectorMetrics {
+
+    /**
+     * The phases of the collector.
+     */
+    enum Phase {
+        PARSE("parse"),
+        INTERPOLATE("interpolate"),
+        REACTOR_LOOKUP("reactorLookup"),
+        RESOLVE("resolve"),
+        COPY("copy"),
+        MANIFEST("manifest"),
+        WRITE_METADATA("writeMetadata");
+
+        final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    private final long start = System.nanoTime();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final ConcurrentMap<String, AtomicLong> bundleNanos = new ConcurrentHashMap<>();
+    private final Map<String, Long> counters = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+    /**
+     * Charge the time since {@code startNanos} to a phase and, if it is not null, to a bundle.
+     */
+    void addSince(Phase phase, String bundle, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+        if (bundle != null) {
+            AtomicLong total = bundleNanos.get(bundle);
+            if (total == null) {
+                AtomicLong fresh = new AtomicLong();
+                total = bundleNanos.putIfAbsent(bundle, fresh);
+                if (total == null) {
+                    total = fresh;
+                }
+            }
+            total.addAndGet(nanos);
+        }
+    }
+
+    void setCounter(String name, long value) {
+        counters.put(name, value);
+    }
+
+    /**
+     * @return a one-line account of the run, for the log.
+     */
+    String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "collect-bundles took %d ms (", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(phase.key).append(' ').append(TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase.ordinal()))).append(" ms");
+        }
+        sb.append(')');
+        synchronized (counters) {
+            for (Map.Entry<String, Long> me : counters.entrySet()) {
+                sb.append("; ").append(me.getKey()).append(' ').append(me.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the metrics as JSON.
+     * @param slowest how many of the slowest bundles to list.
+     */
+    void write(File file, int slowest) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"elapsedMillis\": ").append(millis(System.nanoTime() - start)).append(",\n");
+        json.append("  \"phaseMillis\": {");
+        for (Phase phase : Phase.values()) {
+            json.append(phase.ordinal() > 0 ? "," : "").append("\n    ");
+            string(json, phase.key).append(": ").append(millis(phaseNanos.get(phase.ordinal())));
+        }
+        json.append("\n  },\n");
+        json.append("  \"counters\": {");
+        synchronized (counters) {
+            String separator = "";
+            for (Map.Entry<String, Long> me : counters.entrySet()) {
+                json.append(separator).append("\n    ");
+                string(json, me.getKey()).append(": ").append(me.getValue());
+                separator = ",";
+            }
+        }
+        json.append("\n  },\n");
+        json.append("  \"slowestBundles\": [");
+        List<Map.Entry<String, AtomicLong>> bundles = new ArrayList<>(bundleNanos.entrySet());
+        Collections.sort(bundles, new Comparator<Map.Entry<String, AtomicLong>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicLong> o1, Map.Entry<String, AtomicLong> o2) {
+                return Long.compare(o2.getValue().get(), o1.getValue().get());
+            }
+        });
+        for (int i = 0; i < Math.min(slowest, bundles.size()); i++) {
+            json.append(i > 0 ? "," : "").append("\n    { \"bundle\": ");
+            string(json, bundles.get(i).getKey()).append(", \"millis\": ").append(millis(bundles.get(i).getValue().get())).append(" }");
+        }
+        json.append("\n  ]\n}\n");
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static StringBuilder string(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+}
@@ -0,0 +1,48 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.util.Locale;
+
+/**
+ * How {@link BundleCopier} puts an artifact into the output directory.
+ */
+enum CopyStrategy {
+    /**
+     * An ordinary copy.
+     */
+    COPY,
+    /**
+     * A hard link to the artifact; falls back to a copy when the two are on different file systems.
+     */
+    HARDLINK,
+    /**
+     * A symbolic link to the artifact; falls back to a copy where links cannot be made.
+     */
+    SYMLINK,
+    /**
+     * A copy made with {@link java.nio.channels.FileChannel#transferTo}, which lets the OS move the bytes.
+     */
+    TRANSFER;
+
+    /**
+     * Look up a strategy by its (case-insensitive) name.
+     * @throws IllegalArgumentException if there is no such strategy.
+     */
+    static CopyStrategy forName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
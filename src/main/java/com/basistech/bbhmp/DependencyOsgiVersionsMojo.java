@@ -0,0 +1,113 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Transform the versions of the project's dependencies to OSGi versions, as {@code osgi-version}
+ * does for the project's own version (but without timestamps), and define a property for each:
+ * {@code osgi-version.<groupId>.<artifactId>}, and with {@code ranges},
+ * {@code osgi-range.<groupId>.<artifactId>}, a range such as {@code [1.2,2)} for {@code Import-Package}.
+ * A dependency whose version fits neither form is left out, with a warning.
+ */
+@Mojo(name = "dependency-osgi-versions", defaultPhase = LifecyclePhase.PROCESS_SOURCES,
+    requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME, threadSafe = true)
+public class DependencyOsgiVersionsMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    MavenProject project;
+
+    /**
+     * Patterns of the dependencies to convert, as {@code groupId:artifactId:type:classifier:version}
+     * or {@code groupId/artifactId}, with {@code *} and {@code ?} wildcards. All, by default.
+     */
+    @Parameter
+    List<String> includes;
+
+    /**
+     * Patterns of the dependencies to leave out.
+     */
+    @Parameter
+    List<String> excludes;
+
+    /**
+     * The prefix of the version properties.
+     */
+    @Parameter(defaultValue = "osgi-version")
+    String propertyPrefix;
+
+    /**
+     * Also define a range property for each dependency: from its major and minor version, up to
+     * the next major version.
+     */
+    @Parameter(defaultValue = "false")
+    boolean ranges;
+
+    /**
+     * The prefix of the range properties.
+     */
+    @Parameter(defaultValue = "osgi-range")
+    String rangePropertyPrefix;
+
+    public void execute() throws MojoExecutionException {
+        List<ArtifactPattern> includePatterns = ArtifactPattern.parseAll(includes);
+        List<ArtifactPattern> excludePatterns = ArtifactPattern.parseAll(excludes);
+        Set<String> done = new HashSet<>();
+        for (Artifact dependency : project.getArtifacts()) {
+            if ((!includePatterns.isEmpty() && !ArtifactPattern.matchesAny(includePatterns, dependency))
+                || ArtifactPattern.matchesAny(excludePatterns, dependency)) {
+                continue;
+            }
+            // the base version, so that a snapshot has the same OSGi version whichever build of it we have.
+            MavenOsgiVersion osgiVersion = MavenOsgiVersion.parse(dependency.getBaseVersion());
+            if (osgiVersion == null) {
+                getLog().warn(String.format("Version %s of %s is not x.y.z, x.y.z.cXX.Y(<qualifier>), or x.y.z.<qualifier>; leaving it out",
+                    dependency.getBaseVersion(), dependency.getId()));
+                continue;
+            }
+            String key = dependency.getGroupId() + "." + dependency.getArtifactId();
+            if (!done.add(key)) {
+                // another classifier of the same artifact.
+                continue;
+            }
+            defineProperty(propertyPrefix + "." + key, osgiVersion.getOsgiVersion());
+            if (ranges) {
+                defineProperty(rangePropertyPrefix + "." + key, osgiVersion.getRange());
+            }
+        }
+        getLog().info(String.format("Defined OSGi versions for %d dependencies", done.size()));
+    }
+
+    private void defineProperty(String name, String value) {
+        if (getLog().isDebugEnabled()) {
+            getLog().debug("define property " + name + " = \"" + value + "\"");
+        }
+
+        project.getProperties().put(name, value);
+    }
+}
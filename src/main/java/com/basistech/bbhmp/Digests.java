@@ -0,0 +1,97 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message digests of bundle files.
+ */
+final class Digests {
+    static final String SHA_256 = "SHA-256";
+    static final String SHA_1 = "SHA-1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Digests() {
+        //
+    }
+
+    /**
+     * @return a fresh digest for the algorithm.
+     * @throws IOException if the JVM does not have it, which for the standard algorithms it always does.
+     */
+    static MessageDigest newDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("No " + algorithm + " digest available", e);
+        }
+    }
+
+    /**
+     * @return a fresh digest for each of the algorithms, in order.
+     */
+    static MessageDigest[] newDigests(List<String> algorithms) throws IOException {
+        MessageDigest[] digests = new MessageDigest[algorithms.size()];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = newDigest(algorithms.get(i));
+        }
+        return digests;
+    }
+
+    /**
+     * @return the hex of each digest, by algorithm, in order.
+     */
+    static Map<String, String> toHex(List<String> algorithms, MessageDigest[] digests) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < digests.length; i++) {
+            result.put(algorithms.get(i), hex(digests[i].digest()));
+        }
+        return result;
+    }
+
+    static byte[] sha256(File file) throws IOException {
+        MessageDigest digest = newDigest(SHA_256);
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return lower-case hex.
+     */
+    static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
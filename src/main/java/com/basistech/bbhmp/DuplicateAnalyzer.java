@@ -0,0 +1,190 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Looks for what is in a set of bundles more than once: an artifact at several versions, a package
+ * split across bundles (exported, or with classes, in more than one), and classes in more than one
+ * bundle. The class and package indexes come from the central directories of the jars. A fragment's
+ * content counts as its host's, since that is where it ends up.
+ */
+class DuplicateAnalyzer {
+    private static final int EXAMPLES = 3;
+
+    private final List<String> duplicateVersions = new ArrayList<>();
+    private final List<String> splitPackages = new ArrayList<>();
+    private final List<String> duplicateClasses = new ArrayList<>();
+
+    DuplicateAnalyzer(BundleWiring wiring) throws IOException {
+        List<BundleSpec> bundles = wiring.getBundles();
+        findDuplicateVersions(bundles);
+
+        Map<String, Set<BundleSpec>> packages = new HashMap<>();
+        Map<String, BundleSpec> firstOwner = new HashMap<>();
+        Map<String, Set<BundleSpec>> classOwners = new LinkedHashMap<>();
+        for (BundleSpec bundle : bundles) {
+            List<BundleSpec> owners = wiring.owners(bundle);
+            BundleSpec owner = owners.get(0);
+            for (OsgiHeader.Clause clause : OsgiHeader.parse(bundle.manifest.get(BundleManifest.EXPORT_PACKAGE))) {
+                for (String pkg : clause.paths) {
+                    add(packages, pkg, owner);
+                }
+            }
+            for (String name : ManifestReader.entryNames(bundle.file)) {
+                if (!name.endsWith(".class") || name.startsWith("META-INF/")
+                    || name.endsWith("module-info.class") || name.endsWith("package-info.class")) {
+                    continue;
+                }
+                int slash = name.lastIndexOf('/');
+                add(packages, slash == -1 ? "" : name.substring(0, slash).replace('/', '.'), owner);
+                BundleSpec first = firstOwner.get(name);
+                if (first == null) {
+                    firstOwner.put(name, owner);
+                } else if (first != owner) {
+                    Set<BundleSpec> classBundles = classOwners.get(name);
+                    if (classBundles == null) {
+                        classBundles = new LinkedHashSet<>();
+                        classBundles.add(first);
+                        classOwners.put(name, classBundles);
+                    }
+                    classBundles.add(owner);
+                }
+            }
+        }
+        findSplitPackages(packages);
+        findDuplicateClasses(classOwners);
+    }
+
+    /**
+     * @return one line for each artifact with more than one version among the bundles.
+     */
+    List<String> getDuplicateVersions() {
+        return duplicateVersions;
+    }
+
+    /**
+     * @return one line for each package in more than one bundle.
+     */
+    List<String> getSplitPackages() {
+        return splitPackages;
+    }
+
+    /**
+     * @return one line for each set of bundles that share classes.
+     */
+    List<String> getDuplicateClasses() {
+        return duplicateClasses;
+    }
+
+    /**
+     * @return for each artifact with more than one version, the versions, highest first.
+     */
+    static Map<String, List<BundleSpec>> versionsByArtifact(List<BundleSpec> bundles) {
+        Map<String, List<BundleSpec>> byArtifact = new LinkedHashMap<>();
+        for (BundleSpec bundle : bundles) {
+            String key = bundle.gav.versionless();
+            List<BundleSpec> versions = byArtifact.get(key);
+            if (versions == null) {
+                versions = new ArrayList<>();
+                byArtifact.put(key, versions);
+            }
+            versions.add(bundle);
+        }
+        Map<String, List<BundleSpec>> duplicates = new LinkedHashMap<>();
+        for (Map.Entry<String, List<BundleSpec>> me : byArtifact.entrySet()) {
+            if (me.getValue().size() > 1) {
+                Collections.sort(me.getValue(), new Comparator<BundleSpec>() {
+                    @Override
+                    public int compare(BundleSpec o1, BundleSpec o2) {
+                        return new DefaultArtifactVersion(o2.gav.getVersion()).compareTo(new DefaultArtifactVersion(o1.gav.getVersion()));
+                    }
+                });
+                duplicates.put(me.getKey(), me.getValue());
+            }
+        }
+        return duplicates;
+    }
+
+    private void findDuplicateVersions(List<BundleSpec> bundles) {
+        for (Map.Entry<String, List<BundleSpec>> me : versionsByArtifact(bundles).entrySet()) {
+            List<String> versions = new ArrayList<>();
+            for (BundleSpec bundle : me.getValue()) {
+                versions.add(bundle.gav.getVersion());
+            }
+            duplicateVersions.add(String.format("%s is present at versions %s", me.getKey(), versions));
+        }
+    }
+
+    private void findSplitPackages(Map<String, Set<BundleSpec>> packages) {
+        Map<String, Set<BundleSpec>> sorted = new TreeMap<>(packages);
+        for (Map.Entry<String, Set<BundleSpec>> me : sorted.entrySet()) {
+            if (me.getValue().size() > 1) {
+                splitPackages.add(String.format("package %s is in %s", me.getKey(), filenames(me.getValue())));
+            }
+        }
+    }
+
+    /**
+     * Group the shared classes by the bundles that share them, to keep the report readable.
+     */
+    private void findDuplicateClasses(Map<String, Set<BundleSpec>> classOwners) {
+        Map<Set<BundleSpec>, List<String>> byOwners = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<BundleSpec>> me : classOwners.entrySet()) {
+            List<String> classes = byOwners.get(me.getValue());
+            if (classes == null) {
+                classes = new ArrayList<>();
+                byOwners.put(me.getValue(), classes);
+            }
+            classes.add(me.getKey());
+        }
+        for (Map.Entry<Set<BundleSpec>, List<String>> me : byOwners.entrySet()) {
+            List<String> classes = me.getValue();
+            duplicateClasses.add(String.format("%d classes are in each of %s, e.g. %s", classes.size(),
+                filenames(me.getKey()), classes.subList(0, Math.min(EXAMPLES, classes.size()))));
+        }
+    }
+
+    private static List<String> filenames(Set<BundleSpec> bundles) {
+        List<String> names = new ArrayList<>();
+        for (BundleSpec bundle : bundles) {
+            names.add(bundle.filename);
+        }
+        return names;
+    }
+
+    private static void add(Map<String, Set<BundleSpec>> map, String key, BundleSpec bundle) {
+        Set<BundleSpec> set = map.get(key);
+        if (set == null) {
+            set = new LinkedHashSet<>(2);
+            map.put(key, set);
+        }
+        set.add(bundle);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * The identity of a staged bundle: groupId, artifactId, classifier and version.
+ * The hash is computed once, and the string form only when someone asks for it.
+ */
+final class GavKey {
+    private final String groupId;
+    private final String artifactId;
+    private final String classifier;
+    private final String version;
+    private final int hash;
+    private String string;
+
+    GavKey(String groupId, String artifactId, String classifier, String version) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.classifier = classifier == null ? "" : classifier;
+        this.version = version;
+        int h = groupId.hashCode();
+        h = 31 * h + artifactId.hashCode();
+        h = 31 * h + this.classifier.hashCode();
+        h = 31 * h + version.hashCode();
+        this.hash = h;
+    }
+
+    static GavKey of(Artifact artifact) {
+        return new GavKey(artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier(), artifact.getVersion());
+    }
+
+    /**
+     * @return groupId:artifactId, plus :classifier if there is one; the same for all the versions of an artifact.
+     */
+    String versionless() {
+        return classifier.isEmpty() ? groupId + ':' + artifactId : groupId + ':' + artifactId + ':' + classifier;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GavKey)) {
+            return false;
+        }
+        GavKey that = (GavKey) o;
+        return hash == that.hash
+                && version.equals(that.version)
+                && artifactId.equals(that.artifactId)
+                && groupId.equals(that.groupId)
+                && classifier.equals(that.classifier);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @return groupId:artifactId:classifier:version, with an empty classifier for none.
+     */
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = groupId + ':' + artifactId + ':' + classifier + ':' + version;
+        }
+        return string;
+    }
+}
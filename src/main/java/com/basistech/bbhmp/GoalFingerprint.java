@@ -0,0 +1,108 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A digest of everything that goes into one execution of a goal, and a record of the last
+ * execution that it can be compared with. The record holds the digest, the files that the
+ * execution read (which are only known once it has resolved its artifacts) and the files
+ * that it wrote, each with its size and modification time. The execution can be skipped when
+ * the digest is the same and none of those files has changed or gone missing.
+ */
+final class GoalFingerprint {
+    private static final String HEADER = "bbh-fingerprint 1";
+
+    private final MessageDigest digest;
+
+    GoalFingerprint() throws IOException {
+        digest = Digests.newDigest(Digests.SHA_256);
+    }
+
+    /**
+     * Add a labelled value. Values are length-prefixed, so that no two sequences of them digest alike.
+     */
+    GoalFingerprint add(String label, String value) {
+        update(label);
+        update(value == null ? "\u0000" : value);
+        return this;
+    }
+
+    /**
+     * Add a file by its path, size and modification time; a missing file counts too.
+     */
+    GoalFingerprint addFile(String label, File file) {
+        return add(label, file == null ? null : stamp(file));
+    }
+
+    String value() {
+        return Digests.hex(digest.digest());
+    }
+
+    /**
+     * @return whether the record was written for this fingerprint, and the files it lists are as they were.
+     */
+    static boolean isCurrent(File record, String fingerprint, Log log) throws IOException {
+        if (!record.isFile()) {
+            return false;
+        }
+        List<String> lines = Files.readAllLines(record.toPath(), StandardCharsets.UTF_8);
+        if (lines.size() < 2 || !HEADER.equals(lines.get(0)) || !fingerprint.equals(lines.get(1))) {
+            log.debug("The inputs have changed since " + record + " was written");
+            return false;
+        }
+        for (String line : lines.subList(2, lines.size())) {
+            int tab = line.indexOf('\t');
+            File file = new File(line.substring(tab + 1));
+            if (tab == -1 || !line.substring(0, tab).equals(stamp(file))) {
+                log.debug("Changed or missing since the last build: " + file);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param files the files that the execution read and wrote.
+     */
+    static void write(File record, String fingerprint, Collection<File> files) throws IOException {
+        StringBuilder content = new StringBuilder(HEADER).append('\n').append(fingerprint).append('\n');
+        for (File file : files) {
+            content.append(stamp(file)).append('\t').append(file.getAbsolutePath()).append('\n');
+        }
+        AtomicFiles.writeIfChanged(record.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String stamp(File file) {
+        return file.isFile() ? file.length() + ":" + file.lastModified() : "missing";
+    }
+
+    private void update(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+}
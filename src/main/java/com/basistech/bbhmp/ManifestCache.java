@@ -0,0 +1,255 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers, from one build to the next, the manifest headers of the bundles we have looked at.
+ * Entries are keyed by the artifact's path, and are only believed if the file still has the same
+ * size and modification time. Release artifacts in the local repository do not change, so this
+ * lets repeat builds skip opening the jars altogether. Snapshots are kept in memory for the
+ * current build, but never written out; a snapshot jar can be rebuilt or re-downloaded in place,
+ * and reading one manifest is cheap enough not to take chances on it.
+ * Manifests are also shared, through the {@link SessionCache}, with the other executions in the same build.
+ * Entries for files that have since changed or gone away (e.g. old versions cleaned out of the local
+ * repository) are dropped when the cache is saved, so that it does not grow without bound.
+ */
+class ManifestCache {
+    private static final int MAGIC = 0x62626d63; // 'bbmc'
+
+    private final File file;
+    private final Log log;
+    private final SessionCache session;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // the paths looked up by this build; their entries are known to be current.
+    private final Set<String> used = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean dirty;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param file where to persist the cache; null for a cache that lasts only as long as this object.
+     * @param session what this build has already read.
+     */
+    ManifestCache(File file, Log log, SessionCache session) {
+        this.file = file;
+        this.log = log;
+        this.session = session;
+    }
+
+    /**
+     * Load the persisted cache, if any. A cache that is unreadable, or was written for
+     * a different set of headers, is quietly ignored.
+     */
+    void load() {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || !formatKey().equals(readString(in))) {
+                log.debug("Ignoring manifest cache in an old format " + file);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = readString(in);
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                boolean present = in.readBoolean();
+                int headerCount = in.readInt();
+                Map<String, String> headers = new TreeMap<>();
+                for (int h = 0; h < headerCount; h++) {
+                    headers.put(readString(in), readString(in));
+                }
+                BundleManifest manifest = present ? new BundleManifest(true, headers) : BundleManifest.NONE;
+                entries.put(path, new Entry(size, lastModified, true, manifest));
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable manifest cache " + file + ": " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Write the cache back out, if it has changed. The file is replaced atomically,
+     * so that builds sharing a cache directory never see half of one.
+     */
+    void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        int stale = dropStale();
+        if (stale > 0) {
+            log.debug(String.format("Dropping %d stale entries from the manifest cache", stale));
+        }
+        if (!dirty && stale == 0) {
+            return;
+        }
+        Path target = file.toPath();
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                write(out);
+            }
+            AtomicFiles.move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        dirty = false;
+    }
+
+    /**
+     * @param artifactFile the artifact's jar.
+     * @param snapshot whether it is a snapshot, which we do not persist.
+     */
+    BundleManifest get(File artifactFile, boolean snapshot) throws IOException {
+        String path = artifactFile.getAbsolutePath();
+        used.add(path);
+        long size = artifactFile.length();
+        long lastModified = artifactFile.lastModified();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            synchronized (this) {
+                hits++;
+            }
+            return entry.manifest;
+        }
+        BundleManifest manifest = session.getManifest(artifactFile, size, lastModified);
+        synchronized (this) {
+            if (manifest == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+        if (manifest == null) {
+            manifest = BundleManifest.of(ManifestReader.read(artifactFile));
+            session.putManifest(artifactFile, size, lastModified, manifest);
+        }
+        entries.put(path, new Entry(size, lastModified, !snapshot, manifest));
+        if (!snapshot) {
+            dirty = true;
+        }
+        return manifest;
+    }
+
+    synchronized int getHits() {
+        return hits;
+    }
+
+    synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Forget the persistent entries that this build did not look up, and whose files no longer
+     * match them.
+     * @return how many there were.
+     */
+    private int dropStale() {
+        int count = 0;
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Entry> me = it.next();
+            if (!me.getValue().persistent || used.contains(me.getKey())) {
+                continue;
+            }
+            File artifactFile = new File(me.getKey());
+            if (!artifactFile.isFile() || artifactFile.length() != me.getValue().size
+                || artifactFile.lastModified() != me.getValue().lastModified) {
+                it.remove();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        Map<String, Entry> persistent = new TreeMap<>();
+        for (Map.Entry<String, Entry> me : entries.entrySet()) {
+            if (me.getValue().persistent) {
+                persistent.put(me.getKey(), me.getValue());
+            }
+        }
+        out.writeInt(MAGIC);
+        writeString(out, formatKey());
+        out.writeInt(persistent.size());
+        for (Map.Entry<String, Entry> me : persistent.entrySet()) {
+            Entry entry = me.getValue();
+            writeString(out, me.getKey());
+            out.writeLong(entry.size);
+            out.writeLong(entry.lastModified);
+            out.writeBoolean(entry.manifest.isPresent());
+            Map<String, String> headers = entry.manifest.getHeaders();
+            out.writeInt(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                writeString(out, header.getKey());
+                writeString(out, header.getValue());
+            }
+        }
+    }
+
+    private static String formatKey() {
+        return BundleManifest.HEADERS.toString();
+    }
+
+    /*
+     * Not writeUTF; manifest headers can run past its 64k limit.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        final boolean persistent;
+        final BundleManifest manifest;
+
+        Entry(long size, long lastModified, boolean persistent, BundleManifest manifest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.persistent = persistent;
+            this.manifest = manifest;
+        }
+    }
+}
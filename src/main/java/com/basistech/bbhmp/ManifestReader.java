@@ -0,0 +1,277 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read the manifest of a jar without reading the rest of it. {@link JarFile} reads and indexes
+ * the entire central directory before it will hand over the manifest; here we find the
+ * central directory from the end record, walk it only as far as {@code META-INF/MANIFEST.MF}
+ * (which is almost always the first or second entry), and read just that one entry.
+ * Archives that need zip64 go the long way round, through {@link JarFile}.
+ * The same walk of the central directory, to the end, lists the entries of a jar.
+ */
+final class ManifestReader {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int END_LENGTH = 22;
+    private static final int CENTRAL_LENGTH = 46;
+    private static final int LOCAL_LENGTH = 30;
+    private static final int MAX_COMMENT = 0xffff;
+    private static final int WINDOW = 16 * 1024;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final byte[] MANIFEST_NAME = JarFile.MANIFEST_NAME.getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private ByteBuffer window;
+    private long windowStart;
+    private int entries;
+    private long centralOffset;
+    private long centralEnd;
+
+    private ManifestReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return the manifest, or null if the jar has none.
+     */
+    static Manifest read(File jar) throws IOException {
+        byte[] bytes;
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            bytes = new ManifestReader(channel).manifestBytes();
+        } catch (Zip64Exception e) {
+            try (JarFile jarFile = new JarFile(jar)) {
+                return jarFile.getManifest();
+            }
+        } catch (IOException e) {
+            throw new IOException("Failed to read manifest from " + jar.getAbsolutePath(), e);
+        }
+        return bytes == null ? null : new Manifest(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * @return the names of the entries in a jar, in the order of its central directory.
+     */
+    static List<String> entryNames(File jar) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            return new ManifestReader(channel).names();
+        } catch (Zip64Exception e) {
+            List<String> names = new ArrayList<>();
+            try (JarFile jarFile = new JarFile(jar)) {
+                Enumeration<JarEntry> jarEntries = jarFile.entries();
+                while (jarEntries.hasMoreElements()) {
+                    names.add(jarEntries.nextElement().getName());
+                }
+            }
+            return names;
+        } catch (IOException e) {
+            throw new IOException("Failed to list the entries of " + jar.getAbsolutePath(), e);
+        }
+    }
+
+    private List<String> names() throws IOException {
+        findCentralDirectory();
+        List<String> names = new ArrayList<>(entries);
+        long position = centralOffset;
+        for (int i = 0; i < entries && position < centralEnd; i++) {
+            ensure(position, CENTRAL_LENGTH, centralEnd);
+            int base = (int) (position - windowStart);
+            if (window.getInt(base) != CENTRAL_SIGNATURE) {
+                throw new IOException("Bad central directory entry at " + position);
+            }
+            int nameLength = u16(window, base + 28);
+            int entryLength = CENTRAL_LENGTH + nameLength + u16(window, base + 30) + u16(window, base + 32);
+            ensure(position, CENTRAL_LENGTH + nameLength, centralEnd);
+            base = (int) (position - windowStart);
+            byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = window.get(base + CENTRAL_LENGTH + j);
+            }
+            names.add(new String(name, StandardCharsets.UTF_8));
+            position += entryLength;
+        }
+        return names;
+    }
+
+    private byte[] manifestBytes() throws IOException {
+        findCentralDirectory();
+        long position = centralOffset;
+        for (int i = 0; i < entries && position < centralEnd; i++) {
+            ensure(position, CENTRAL_LENGTH, centralEnd);
+            int base = (int) (position - windowStart);
+            if (window.getInt(base) != CENTRAL_SIGNATURE) {
+                throw new IOException("Bad central directory entry at " + position);
+            }
+            int nameLength = u16(window, base + 28);
+            int entryLength = CENTRAL_LENGTH + nameLength + u16(window, base + 30) + u16(window, base + 32);
+            if (nameLength == MANIFEST_NAME.length) {
+                ensure(position, CENTRAL_LENGTH + nameLength, centralEnd);
+                base = (int) (position - windowStart);
+                if (isManifestName(window, base + CENTRAL_LENGTH)) {
+                    return readEntry(u16(window, base + 10), u32(window, base + 20), u32(window, base + 24), u32(window, base + 42));
+                }
+            }
+            position += entryLength;
+        }
+        return null;
+    }
+
+    /**
+     * Find the central directory from the end record.
+     */
+    private void findCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, END_LENGTH + MAX_COMMENT);
+        ByteBuffer tail = readAt(size - tailLength, tailLength);
+        int end = -1;
+        for (int i = tailLength - END_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE && i + END_LENGTH + u16(tail, i + 20) <= tailLength) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new IOException("No zip end of central directory record");
+        }
+        entries = u16(tail, end + 10);
+        long centralSize = u32(tail, end + 12);
+        centralOffset = u32(tail, end + 16);
+        if (entries == 0xffff || centralSize == 0xffffffffL || centralOffset == 0xffffffffL) {
+            throw new Zip64Exception();
+        }
+        centralEnd = centralOffset + centralSize;
+    }
+
+    private byte[] readEntry(int method, long compressedSize, long size, long localOffset) throws IOException {
+        if (compressedSize == 0xffffffffL || size == 0xffffffffL || localOffset == 0xffffffffL) {
+            throw new Zip64Exception();
+        }
+        ByteBuffer local = readAt(localOffset, LOCAL_LENGTH);
+        if (local.getInt(0) != LOCAL_SIGNATURE) {
+            throw new IOException("Bad local header at " + localOffset);
+        }
+        long dataOffset = localOffset + LOCAL_LENGTH + u16(local, 26) + u16(local, 28);
+        if (method == STORED) {
+            return readAt(dataOffset, (int) size).array();
+        } else if (method != DEFLATED) {
+            throw new IOException("Unsupported compression method " + method + " for " + JarFile.MANIFEST_NAME);
+        }
+        // the inflater wants an extra byte of input when there's no zlib header.
+        ByteBuffer compressed = ByteBuffer.allocate((int) compressedSize + 1);
+        readFully(compressed, dataOffset, (int) compressedSize);
+        byte[] bytes = new byte[(int) size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed.array());
+            int count = 0;
+            while (count < bytes.length && !inflater.finished()) {
+                int n = inflater.inflate(bytes, count, bytes.length - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Truncated " + JarFile.MANIFEST_NAME);
+                }
+                count += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt " + JarFile.MANIFEST_NAME, e);
+        } finally {
+            inflater.end();
+        }
+        return bytes;
+    }
+
+    /**
+     * Make sure that the window holds {@code length} bytes from {@code position}, reading
+     * ahead a window's worth (but not past {@code limit}) when it does not.
+     */
+    private void ensure(long position, int length, long limit) throws IOException {
+        if (window != null && position >= windowStart && position + length <= windowStart + window.limit()) {
+            return;
+        }
+        if (position + length > limit) {
+            throw new IOException("Central directory entry at " + position + " runs past the end of the directory");
+        }
+        window = readAt(position, (int) Math.min(Math.max(length, WINDOW), limit - position));
+        windowStart = position;
+    }
+
+    private ByteBuffer readAt(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, position, length);
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int read = 0;
+        while (read < length) {
+            int n = channel.read(buffer, position + read);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of file at " + (position + read));
+            }
+            read += n;
+        }
+        buffer.flip();
+    }
+
+    private static boolean isManifestName(ByteBuffer buffer, int offset) {
+        for (int i = 0; i < MANIFEST_NAME.length; i++) {
+            int b = buffer.get(offset + i);
+            // ASCII case folding, as zip tools are not consistent about the case of this name.
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != MANIFEST_NAME[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u16(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) & 0xffff;
+    }
+
+    private static long u32(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset) & 0xffffffffL;
+    }
+
+    /**
+     * Thrown when the archive needs zip64 structures, which we leave to {@link JarFile}.
+     */
+    private static class Zip64Exception extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+/**
+ * The OSGi form of a Maven version, by the Basis conventions that {@link OsgiVersionMojo} describes.
+ * This is a hand-written scanner for what used to be two regular expressions, and accepts exactly
+ * what they did:
+ * <pre>
+ * ([0-9]+\.[0-9]+\.[0-9]+\.c[0-9]+)\.([0-9]+[\p{Alnum}._-]*)
+ * (?&lt;major&gt;[0-9]+)(\.(?&lt;minor&gt;[0-9]+)(\.(?&lt;patch&gt;[0-9]+)(?&lt;qualifier&gt;\.[\p{Alnum}._-]+?)?)?)?(-SNAPSHOT)?
+ * </pre>
+ * The first gives {@code x.y.z.cXX_Y...}, keeping everything after the c-number (a {@code -SNAPSHOT}
+ * included) as the qualifier. The second gives {@code x.y.z}, with zeros for a missing minor or patch,
+ * followed by the qualifier, if any; a trailing {@code -SNAPSHOT} belongs to the qualifier only when
+ * nothing else does. It goes through the version once, and allocates only the result.
+ */
+final class MavenOsgiVersion {
+    private static final String SNAPSHOT = "-SNAPSHOT";
+
+    private final String osgiVersion;
+    private final boolean qualified;
+    private final String major;
+    private final String minor;
+
+    private MavenOsgiVersion(String osgiVersion, boolean qualified, String major, String minor) {
+        this.osgiVersion = osgiVersion;
+        this.qualified = qualified;
+        this.major = major;
+        this.minor = minor;
+    }
+
+    /**
+     * @return the conversion, or null if the version fits neither form.
+     */
+    static MavenOsgiVersion parse(String version) {
+        MavenOsgiVersion cxx = parseCxx(version);
+        return cxx != null ? cxx : parsePlain(version);
+    }
+
+    /**
+     * @return the OSGi version, without any timestamp.
+     */
+    String getOsgiVersion() {
+        return osgiVersion;
+    }
+
+    /**
+     * @return whether the OSGi version has a qualifier; a c-number always is one.
+     */
+    boolean isQualified() {
+        return qualified;
+    }
+
+    /**
+     * @return the range of versions with the same major version, from this major and minor version on,
+     * e.g. {@code [1.2,2)}; a range that suits an {@code Import-Package}.
+     */
+    String getRange() {
+        return "[" + major + "." + minor + "," + increment(major) + ")";
+    }
+
+    /*
+     * ([0-9]+\.[0-9]+\.[0-9]+\.c[0-9]+)\.([0-9]+[\p{Alnum}._-]*)
+     */
+    private static MavenOsgiVersion parseCxx(String version) {
+        int length = version.length();
+        int majorEnd = digits(version, 0);
+        if (majorEnd == 0 || !at(version, majorEnd, '.')) {
+            return null;
+        }
+        int minorEnd = digits(version, majorEnd + 1);
+        if (minorEnd == majorEnd + 1 || !at(version, minorEnd, '.')) {
+            return null;
+        }
+        int patchEnd = digits(version, minorEnd + 1);
+        if (patchEnd == minorEnd + 1 || !at(version, patchEnd, '.') || !at(version, patchEnd + 1, 'c')) {
+            return null;
+        }
+        int cEnd = digits(version, patchEnd + 2);
+        if (cEnd == patchEnd + 2 || !at(version, cEnd, '.')) {
+            return null;
+        }
+        int rest = cEnd + 1;
+        if (rest >= length || !isDigit(version.charAt(rest)) || qualifierChars(version, rest) != length) {
+            return null;
+        }
+        String osgi = new StringBuilder(length).append(version, 0, cEnd).append('_').append(version, rest, length).toString();
+        return new MavenOsgiVersion(osgi, true, version.substring(0, majorEnd), version.substring(majorEnd + 1, minorEnd));
+    }
+
+    /*
+     * (?<major>[0-9]+)(\.(?<minor>[0-9]+)(\.(?<patch>[0-9]+)(?<qualifier>\.[\p{Alnum}._-]+?)?)?)?(-SNAPSHOT)?
+     */
+    private static MavenOsgiVersion parsePlain(String version) {
+        int length = version.length();
+        // what must be left over at the end: nothing, or -SNAPSHOT.
+        int end = version.endsWith(SNAPSHOT) ? length - SNAPSHOT.length() : length;
+        int majorEnd = digits(version, 0);
+        if (majorEnd == 0) {
+            return null;
+        }
+        int minorStart = -1;
+        int minorEnd = -1;
+        int patchStart = -1;
+        int patchEnd = -1;
+        int qualifierEnd = -1;
+        int position = majorEnd;
+        if (at(version, position, '.') && digits(version, position + 1) > position + 1) {
+            minorStart = position + 1;
+            minorEnd = digits(version, minorStart);
+            position = minorEnd;
+            if (at(version, position, '.') && digits(version, position + 1) > position + 1) {
+                patchStart = position + 1;
+                patchEnd = digits(version, patchStart);
+                position = patchEnd;
+                if (at(version, position, '.') && position + 1 < length && qualifierChars(version, position + 1) == length) {
+                    // lazy: stop short of a -SNAPSHOT, unless that would leave the qualifier empty.
+                    qualifierEnd = end > position + 1 ? end : length;
+                    position = qualifierEnd;
+                }
+            }
+        }
+        if (position != end && position != length) {
+            return null;
+        }
+        StringBuilder osgi = new StringBuilder(length + 4).append(version, 0, majorEnd).append('.');
+        if (minorStart == -1) {
+            osgi.append('0');
+        } else {
+            osgi.append(version, minorStart, minorEnd);
+        }
+        osgi.append('.');
+        if (patchStart == -1) {
+            osgi.append('0');
+        } else {
+            osgi.append(version, patchStart, patchEnd);
+        }
+        if (qualifierEnd != -1) {
+            osgi.append(version, patchEnd, qualifierEnd);
+        }
+        return new MavenOsgiVersion(osgi.toString(), qualifierEnd != -1, version.substring(0, majorEnd),
+            minorStart == -1 ? "0" : version.substring(minorStart, minorEnd));
+    }
+
+    /**
+     * @return the end of the run of digits at {@code start}.
+     */
+    private static int digits(String s, int start) {
+        int i = start;
+        while (i < s.length() && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the end of the run of {@code [\p{Alnum}._-]} at {@code start}.
+     */
+    private static int qualifierChars(String s, int start) {
+        int i = start;
+        while (i < s.length()) {
+            if (!isQualifierChar(s.charAt(i))) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isQualifierChar(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || ".-_".indexOf(c) != -1;
+    }
+
+    private static boolean at(String s, int index, char c) {
+        return index < s.length() && s.charAt(index) == c;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Add one to a string of digits, however long.
+     */
+    private static String increment(String digits) {
+        char[] chars = digits.toCharArray();
+        int i = chars.length - 1;
+        while (i >= 0 && chars[i] == '9') {
+            chars[i] = '0';
+            i--;
+        }
+        if (i < 0) {
+            return "1" + new String(chars);
+        }
+        chars[i]++;
+        return new String(chars);
+    }
+}
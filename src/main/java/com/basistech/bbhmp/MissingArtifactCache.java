@@ -0,0 +1,114 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Remembers, from one build to the next, the bundles that could not be found, so that
+ * builds that skip missing artifacts do not go back to the remote repositories for each of
+ * them every time. An entry is believed for a fixed time after it was recorded.
+ */
+class MissingArtifactCache {
+    private final File file;
+    private final long ttlMillis;
+    private final Log log;
+    private final Properties missing = new Properties();
+    private boolean dirty;
+
+    /**
+     * @param file where to persist the cache.
+     * @param ttlMillis how long to believe an entry.
+     */
+    MissingArtifactCache(File file, long ttlMillis, Log log) {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+        this.log = log;
+    }
+
+    /**
+     * Load the persisted cache, if any.
+     * @param refresh if true, forget everything that was persisted.
+     */
+    void load(boolean refresh) {
+        if (!file.isFile()) {
+            return;
+        }
+        if (refresh) {
+            dirty = true;
+            return;
+        }
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            missing.load(is);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable missing artifact cache " + file + ": " + e.getMessage());
+            missing.clear();
+        }
+    }
+
+    void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Path target = file.toPath();
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(temp)) {
+                missing.store(os, "Bundles not found; values are the times they were recorded");
+            }
+            AtomicFiles.move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        dirty = false;
+    }
+
+    /**
+     * @param gav interpolated bundle coordinates, as they appear in the bundle info files.
+     * @return whether the bundle was recently found to be missing.
+     */
+    boolean isKnownMissing(String gav) {
+        String recorded = missing.getProperty(gav);
+        if (recorded == null) {
+            return false;
+        }
+        try {
+            return System.currentTimeMillis() - Long.parseLong(recorded) < ttlMillis;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    void recordMissing(String gav) {
+        missing.setProperty(gav, Long.toString(System.currentTimeMillis()));
+        dirty = true;
+    }
+
+    void recordFound(String gav) {
+        if (missing.remove(gav) != null) {
+            dirty = true;
+        }
+    }
+}
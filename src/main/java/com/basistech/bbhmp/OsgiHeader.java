@@ -0,0 +1,124 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed OSGi manifest header, such as {@code Import-Package}: a comma-separated list of
+ * clauses, each of which is one or more paths followed by attributes ({@code name=value})
+ * and directives ({@code name:=value}), all separated by semicolons. Values may be quoted.
+ */
+final class OsgiHeader {
+    private OsgiHeader() {
+        //
+    }
+
+    /**
+     * One clause of a header.
+     */
+    static final class Clause {
+        final List<String> paths;
+        final Map<String, String> attributes;
+        final Map<String, String> directives;
+
+        Clause(List<String> paths, Map<String, String> attributes, Map<String, String> directives) {
+            this.paths = paths;
+            this.attributes = attributes;
+            this.directives = directives;
+        }
+
+        @Override
+        public String toString() {
+            return paths + ";" + attributes + ";" + directives;
+        }
+    }
+
+    /**
+     * @param value the header value, or null for a missing header.
+     * @return the clauses; empty for a missing or empty header.
+     */
+    static List<Clause> parse(String value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<Clause> clauses = new ArrayList<>();
+        for (String clauseText : split(value, ',')) {
+            List<String> paths = new ArrayList<>();
+            Map<String, String> attributes = new LinkedHashMap<>();
+            Map<String, String> directives = new LinkedHashMap<>();
+            for (String part : split(clauseText, ';')) {
+                int eq = indexOfUnquoted(part, '=');
+                if (eq == -1) {
+                    paths.add(part);
+                } else if (eq > 0 && part.charAt(eq - 1) == ':') {
+                    directives.put(part.substring(0, eq - 1).trim(), unquote(part.substring(eq + 1).trim()));
+                } else {
+                    attributes.put(part.substring(0, eq).trim(), unquote(part.substring(eq + 1).trim()));
+                }
+            }
+            if (!paths.isEmpty()) {
+                clauses.add(new Clause(paths, attributes, directives));
+            }
+        }
+        return clauses;
+    }
+
+    /**
+     * Split on a separator outside of quotes, dropping empty pieces.
+     */
+    private static List<String> split(String value, char separator) {
+        List<String> pieces = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            if (i == value.length() || (value.charAt(i) == separator && !quoted)) {
+                String piece = value.substring(start, i).trim();
+                if (!piece.isEmpty()) {
+                    pieces.add(piece);
+                }
+                start = i + 1;
+            } else if (value.charAt(i) == '"') {
+                quoted = !quoted;
+            }
+        }
+        return pieces;
+    }
+
+    private static int indexOfUnquoted(String value, char c) {
+        boolean quoted = false;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') {
+                quoted = !quoted;
+            } else if (ch == c && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+/**
+ * An OSGi version: major.minor.micro.qualifier, compared numerically and then by qualifier.
+ */
+final class OsgiVersion implements Comparable<OsgiVersion> {
+    static final OsgiVersion ZERO = new OsgiVersion(0, 0, 0, "");
+
+    final int major;
+    final int minor;
+    final int micro;
+    final String qualifier;
+
+    OsgiVersion(int major, int minor, int micro, String qualifier) {
+        this.major = major;
+        this.minor = minor;
+        this.micro = micro;
+        this.qualifier = qualifier;
+    }
+
+    /**
+     * @param text a version, of one to four parts; null or empty for 0.0.0.
+     * @throws IllegalArgumentException if it is not an OSGi version.
+     */
+    static OsgiVersion parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return ZERO;
+        }
+        String[] parts = text.trim().split("\\.", 4);
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            int micro = parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
+            String qualifier = parts.length > 3 ? parts[3] : "";
+            if (major < 0 || minor < 0 || micro < 0) {
+                throw new IllegalArgumentException("Negative part in version " + text);
+            }
+            return new OsgiVersion(major, minor, micro, qualifier);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid version " + text, e);
+        }
+    }
+
+    @Override
+    public int compareTo(OsgiVersion o) {
+        int result = Integer.compare(major, o.major);
+        if (result == 0) {
+            result = Integer.compare(minor, o.minor);
+        }
+        if (result == 0) {
+            result = Integer.compare(micro, o.micro);
+        }
+        if (result == 0) {
+            result = qualifier.compareTo(o.qualifier);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof OsgiVersion && compareTo((OsgiVersion) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((major * 31 + minor) * 31 + micro) * 31 + qualifier.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return major + "." + minor + "." + micro + (qualifier.isEmpty() ? "" : "." + qualifier);
+    }
+}
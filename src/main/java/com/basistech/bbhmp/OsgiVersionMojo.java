@@ -16,6 +16,7 @@
 
 package com.basistech.bbhmp;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -23,13 +24,17 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.Locale;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
 
 /**
  * Transform a maven version to an OSGi version, dealing, as needed, with the
@@ -39,14 +44,10 @@ import java.util.regex.Pattern;
  * Anything else is an error.
  *
  */
-@Mojo(name = "osgi-version", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
+@Mojo(name = "osgi-version", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
 public class OsgiVersionMojo extends AbstractMojo {
 
-    // Matches valid OSGi versions with an optional '-SNAPSHOT' suffix
-    // (note that for the "qualifier" group we deliberately include the leading period)
-    private static final Pattern PLAIN_PATTERN = Pattern.compile("(?<major>[0-9]+)(\\.(?<minor>[0-9]+)(\\.(?<patch>[0-9]+)(?<qualifier>\\.[\\p{Alnum}._-]+?)?)?)?(-SNAPSHOT)?");
-    private static final Pattern CXX_PATTERN = Pattern.compile("([0-9]+\\.[0-9]+\\.[0-9]+\\.c[0-9]+)\\.([0-9]+[\\p{Alnum}._-]*)");
-    private static final String TIMESTAMP_PATTERN = "'v'yyyyMMddhhmmss";
+    private static final String TIMESTAMP_PATTERN = "'v'yyyyMMddHHmmss";
 
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     MavenProject project;
@@ -66,49 +67,126 @@ public class OsgiVersionMojo extends AbstractMojo {
     @Parameter(defaultValue = "osgi-version")
     String propertyName;
 
+    /**
+     * Where the time in a timestamp qualifier comes from:
+     * {@code session}, the time the build started, which is the same for every project in it;
+     * {@code outputTimestamp}, the {@code project.build.outputTimestamp} property of reproducible builds,
+     * either ISO-8601 ({@code 2020-04-05T08:10:00Z}) or seconds since the epoch;
+     * {@code git}, the commit time of {@code HEAD} in the directory the build was started from; or
+     * {@code auto}, {@code outputTimestamp} if the project sets it, and otherwise {@code session}.
+     * The last three give the same qualifier for the same sources, so that rebuilt bundles are identical.
+     */
+    @Parameter(defaultValue = "session")
+    String timestampSource;
+
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    String outputTimestamp;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
     public void execute() throws MojoExecutionException {
         boolean snapshot = project.getVersion().endsWith("-SNAPSHOT");
-        boolean hasQualifier = false;
-        String result;
-
-        Matcher matcher = CXX_PATTERN.matcher(project.getVersion());
-        if (matcher.matches()) {
-            result = String.format("%s_%s", matcher.group(1), matcher.group(2));
-            hasQualifier = true; // c-number is always a qualifier
-        } else {
-            matcher = PLAIN_PATTERN.matcher(project.getVersion());
-            if (matcher.matches()) {
-                String major = matcher.group("major");
-                String minor = matcher.group("minor");
-                String patch = matcher.group("patch");
-                String qualifier = matcher.group("qualifier");
-                hasQualifier = qualifier != null;
-                result = String.format("%s.%s.%s%s",
-                    major,
-                    minor == null ? "0" : minor,
-                    patch == null ? "0" : patch,
-                    qualifier == null ? "" : qualifier);
-            } else {
-                throw new MojoExecutionException(String.format("Version %s does not match either x.y.z, x.y.z.cXX.Y(<qualifier>), or x.y.z.<qualifier>",
-                    project.getVersion()));
-            }
+        MavenOsgiVersion osgiVersion = MavenOsgiVersion.parse(project.getVersion());
+        if (osgiVersion == null) {
+            throw new MojoExecutionException(String.format("Version %s does not match either x.y.z, x.y.z.cXX.Y(<qualifier>), or x.y.z.<qualifier>",
+                project.getVersion()));
         }
+        boolean hasQualifier = osgiVersion.isQualified();
+        String result = osgiVersion.getOsgiVersion();
 
         if (snapshot || timestampQualifier) {
-            SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_PATTERN);
-            TimeZone timeZone = TimeZone.getTimeZone("GMT");
-            format.setTimeZone(timeZone);
-            Date now = new Date();
-            Calendar calendar = new GregorianCalendar();
-            calendar.setTime(now);
-            calendar.setTimeZone(timeZone);
-            calendar.add(Calendar.SECOND, 0);
+            SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_PATTERN, Locale.ROOT);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
             /* add or update the qualifier */
-            result = result + (hasQualifier ? "-" : ".") + format.format(calendar.getTime());
+            result = result + (hasQualifier ? "-" : ".") + format.format(new Date(timestamp()));
         }
         defineProperty(propertyName, result);
     }
 
+    /**
+     * @return the time for the qualifier, in milliseconds since the epoch.
+     */
+    private long timestamp() throws MojoExecutionException {
+        boolean haveOutputTimestamp = outputTimestamp != null && outputTimestamp.trim().length() > 1;
+        /* null when the mojo is built directly, without the @Parameter default */
+        switch (timestampSource == null ? "session" : timestampSource) {
+        case "auto":
+            return haveOutputTimestamp ? parseOutputTimestamp(outputTimestamp.trim()) : sessionTime();
+        case "session":
+            return sessionTime();
+        case "outputTimestamp":
+            if (!haveOutputTimestamp) {
+                throw new MojoExecutionException("timestampSource is outputTimestamp, but project.build.outputTimestamp is not set");
+            }
+            return parseOutputTimestamp(outputTimestamp.trim());
+        case "git":
+            final File dir = session == null ? project.getBasedir() : new File(session.getExecutionRootDirectory());
+            return SessionCache.forBuild(session == null ? null : session.getRequest()).time("git " + dir, new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    return commitTime(dir);
+                }
+            });
+        default:
+            throw new MojoExecutionException("Unknown timestampSource " + timestampSource);
+        }
+    }
+
+    private long sessionTime() {
+        Date start = session == null ? null : session.getRequest().getStartTime();
+        return start == null ? System.currentTimeMillis() : start.getTime();
+    }
+
+    /**
+     * Parse the value of {@code project.build.outputTimestamp} the way that Maven's archiver does:
+     * a number of seconds since the epoch, or an ISO-8601 date and time with an offset.
+     */
+    static long parseOutputTimestamp(String value) throws MojoExecutionException {
+        if (value.matches("[0-9]+")) {
+            return Long.parseLong(value) * 1000L;
+        }
+        for (String pattern : new String[] {"yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX"}) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.ROOT);
+            format.setLenient(false);
+            try {
+                return format.parse(value).getTime();
+            } catch (ParseException e) {
+                // try the next one.
+            }
+        }
+        throw new MojoExecutionException(String.format("Invalid project.build.outputTimestamp %s; expected "
+            + "an ISO-8601 date and time such as 2020-04-05T08:10:00Z, or seconds since the epoch", value));
+    }
+
+    private static long commitTime(File dir) throws MojoExecutionException {
+        String output;
+        int status;
+        try {
+            Process process = new ProcessBuilder("git", "log", "-1", "--format=%ct").directory(dir).redirectErrorStream(true).start();
+            process.getOutputStream().close();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream in = process.getInputStream()) {
+                byte[] buffer = new byte[1024];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, count);
+                }
+            }
+            status = process.waitFor();
+            output = new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to run git in " + dir, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running git in " + dir, e);
+        }
+        if (status != 0 || !output.matches("[0-9]+")) {
+            throw new MojoExecutionException(String.format("Failed to find the time of the last commit in %s: %s", dir, output));
+        }
+        return Long.parseLong(output) * 1000L;
+    }
+
     private void defineProperty(String name, String value) {
         if (getLog().isDebugEnabled()) {
             getLog().debug("define property " + name + " = \"" + value + "\"");
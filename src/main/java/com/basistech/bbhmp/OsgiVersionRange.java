@@ -0,0 +1,77 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+/**
+ * An OSGi version range: {@code [1.0,2.0)} and the like, or a bare version for
+ * that version and anything later.
+ */
+final class OsgiVersionRange {
+    static final OsgiVersionRange ANY = new OsgiVersionRange(OsgiVersion.ZERO, true, null, false, "0.0.0");
+
+    private final OsgiVersion floor;
+    private final boolean floorIncluded;
+    private final OsgiVersion ceiling; // null for none.
+    private final boolean ceilingIncluded;
+    private final String text;
+
+    private OsgiVersionRange(OsgiVersion floor, boolean floorIncluded, OsgiVersion ceiling, boolean ceilingIncluded, String text) {
+        this.floor = floor;
+        this.floorIncluded = floorIncluded;
+        this.ceiling = ceiling;
+        this.ceilingIncluded = ceilingIncluded;
+        this.text = text;
+    }
+
+    /**
+     * @param text a range; null or empty for any version.
+     * @throws IllegalArgumentException if it is not a version range.
+     */
+    static OsgiVersionRange parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return ANY;
+        }
+        String range = text.trim();
+        char first = range.charAt(0);
+        if (first != '[' && first != '(') {
+            return new OsgiVersionRange(OsgiVersion.parse(range), true, null, false, range);
+        }
+        char last = range.charAt(range.length() - 1);
+        int comma = range.indexOf(',');
+        if (comma == -1 || (last != ']' && last != ')')) {
+            throw new IllegalArgumentException("Invalid version range " + text);
+        }
+        return new OsgiVersionRange(OsgiVersion.parse(range.substring(1, comma)), first == '[',
+            OsgiVersion.parse(range.substring(comma + 1, range.length() - 1)), last == ']', range);
+    }
+
+    boolean includes(OsgiVersion version) {
+        int low = version.compareTo(floor);
+        if (low < 0 || (low == 0 && !floorIncluded)) {
+            return false;
+        }
+        if (ceiling == null) {
+            return true;
+        }
+        int high = version.compareTo(ceiling);
+        return high < 0 || (high == 0 && ceilingIncluded);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -16,46 +16,64 @@
 package com.basistech.bbhmp;
 
 import javanet.staxutils.IndentingXMLStreamWriter;
-import org.apache.commons.io.IOUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
 import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
 import org.codehaus.plexus.interpolation.fixed.FixedStringSearchInterpolator;
 import org.codehaus.plexus.interpolation.fixed.PropertiesBasedValueSource;
 import org.codehaus.plexus.util.FileUtils;
-import org.codehaus.plexus.util.StringUtils;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.TreeMap;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Read one or more XML files specifying OSGi bundles, and copy them, setting
@@ -78,9 +96,19 @@ import java.util.jar.Manifest;
  * If a bundle is a fragment, this plugin will notice and arrange <i>not</i> to start it
  * at runtime. If you want to avoid starting some bundle that is not a fragment, add
  * {@code noStart='true'} to the {@code <bundle/>} element.
+ * <p>
+ * An entry may also be a pattern, such as {@code org.apache.cxf/*}{@code /-dependency-} or
+ * {@code com.acme:*:jar::*} (see {@link ArtifactPattern}), which stands for every dependency of the
+ * project that matches it, apart from those matching its {@code exclude} attribute (a comma-separated
+ * list of patterns) or the {@code excludes} parameter. Artifacts that an entry names outright are
+ * left to that entry.
+ * <p>
+ * A file may {@code <include>} others, by paths relative to itself, among its levels; see {@link SpecLoader}
+ * for the order in which they are merged.
  *
  */
-@Mojo(name = "collect-bundles", defaultPhase = LifecyclePhase.PREPARE_PACKAGE, requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+@Mojo(name = "collect-bundles", defaultPhase = LifecyclePhase.PREPARE_PACKAGE, requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME,
+    threadSafe = true)
 public class RosapiBundleCollectorMojo extends AbstractMojo {
 
     @Parameter(required = true)
@@ -91,7 +119,9 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
     File outputDirectory;
 
     /**
-     * What start level to apply to bundles that have no explicit start level.
+     * What start level to apply to bundles that have no explicit start level. With
+     * {@code startLevelMode} {@code computed}, this is the level of the bundles that need nothing
+     * from the other bundles.
      */
     @Parameter(defaultValue = "80")
     int defaultStartLevel;
@@ -114,6 +144,25 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
     @Parameter
     boolean skipMissingArtifacts;
 
+    /**
+     * When skipping missing artifacts, how long (in minutes) to remember in {@code cacheDirectory}
+     * that an artifact could not be found, before asking the remote repositories for it again.
+     */
+    @Parameter(defaultValue = "1440")
+    int missingArtifactTtl;
+
+    /**
+     * Forget the remembered missing artifacts, and look for all of them again.
+     */
+    @Parameter(property = "bbh.refreshMissingArtifacts", defaultValue = "false")
+    boolean refreshMissingArtifacts;
+
+    /**
+     * When skipping missing artifacts, the skipped bundles are listed in this file.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/skipped-bundles.txt")
+    File skippedBundlesReport;
+
 
     /**
      * Log at the feature level
@@ -151,7 +200,285 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
     @Component
     ArtifactFactory factory;
 
+    /**
+     * Used to find the versions that match version ranges. Deprecated, like {@code factory}; spelled out
+     * in full, since importing a deprecated type draws a warning of its own.
+     */
+    @SuppressWarnings("deprecation")
+    @Component
+    org.apache.maven.artifact.metadata.ArtifactMetadataSource metadataSource;
+
+    @Component
+    MavenProjectHelper projectHelper;
+
+    /**
+     * How many artifacts to resolve at once. All the bundles from all the input files are
+     * resolved up front, and then merged in input order, so the output does not depend
+     * on the order in which the downloads finish.
+     */
+    @Parameter(defaultValue = "4")
+    int resolverThreads;
+
+    /**
+     * How many bundles to copy, and read the manifests of, at once. Bundles are staged as they
+     * come out of resolution, so that copying one overlaps with resolving the ones after it.
+     * In the archive output mode only the manifests are read here; the archive has one writer,
+     * which adds the bundles in input order.
+     */
+    @Parameter(defaultValue = "2")
+    int stagingThreads;
+
+    /**
+     * How many resolved bundles may be in the hands of the staging threads before the collector
+     * waits for the oldest of them. This bounds how far resolution and staging run ahead of the
+     * (ordered) merge of the bundles into their levels.
+     */
+    @Parameter(defaultValue = "16")
+    int stagingQueueDepth;
+
+    /**
+     * Leave alone bundles whose output file already matches the artifact. A file of the
+     * same size and modification time is taken to match; a file of the same size with
+     * a different time is compared by content.
+     */
+    @Parameter(defaultValue = "true")
+    boolean skipUpToDateBundles;
+
+    /**
+     * How to put bundles into the output directory: {@code copy}, {@code hardlink},
+     * {@code symlink}, or {@code transfer}. The linking strategies fall back to copying
+     * when they cannot link, e.g. when the local repository is on a different file system.
+     * {@code transfer} copies with {@code FileChannel.transferTo}, so that the operating system
+     * can move the bytes without passing them through the JVM.
+     */
+    @Parameter(defaultValue = "copy")
+    String copyStrategy;
+
+    /**
+     * Where to keep information about bundles from one build to the next. Several projects
+     * may share one directory.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/bbh-cache")
+    File cacheDirectory;
+
+    /**
+     * Remember the manifest headers of release bundles in {@code cacheDirectory}, so that
+     * later builds need not open the jars again.
+     */
+    @Parameter(defaultValue = "true")
+    boolean useManifestCache;
+
+    /**
+     * How long (in minutes) to reuse the version that a version range in the bundle info files
+     * resolved to, before looking at the repository metadata again. The versions are kept
+     * in {@code cacheDirectory}.
+     */
+    @Parameter(defaultValue = "60")
+    int versionRangeTtl;
+
+    /**
+     * Take the versions for version ranges from {@code rangeLockFile}, however old they are.
+     * Ranges that are not in the file are resolved as usual, and added to it; ranges in the file that
+     * this build does not use are kept. Without this, the lock file is neither read nor written.
+     */
+    @Parameter(defaultValue = "false")
+    boolean lockRanges;
+
+    /**
+     * With {@code lockRanges}, the versions chosen for the version ranges in the bundle info files are
+     * kept here. For reproducible builds, point this at a file under version control.
+     * The default is outside {@code outputDirectory}, so that the file does not ship with the bundles.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/bundles.lock")
+    File rangeLockFile;
+
+    /**
+     * Where to write timings and counters for this goal, as JSON. When {@code skipUnchanged} finds
+     * nothing to do, the file says so, with the counter {@code unchanged}.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/collect-bundles-metrics.json")
+    File metricsFile;
+
+    /**
+     * How many of the slowest bundles to list in {@code metricsFile}.
+     */
+    @Parameter(defaultValue = "10")
+    int slowestBundles;
+
+    /**
+     * Add what a launcher needs to plan the installation to each bundle in bundles.xml, so that
+     * it need not open the jars: the {@code symbolicName}, the bundle {@code version}, the
+     * {@code fragmentHost} header (for fragments), the {@code size} in bytes, and the {@code sha256}
+     * of the jar, in hex (and its {@code sha1}, with {@code sha1Checksums}). The digests are computed
+     * as the bundles are copied.
+     */
+    @Parameter(defaultValue = "false")
+    boolean writeBundleIndex;
+
+    /**
+     * Write a {@code .sha256} file, in the format of {@code sha256sum}, next to each bundle
+     * (and a {@code .sha1} file, with {@code sha1Checksums}). Later builds use them to check
+     * whether a bundle is up to date without reading it again. Each starts with a comment, which
+     * {@code sha256sum -c} skips, giving the size and time of the bundle that the digest belongs to.
+     */
+    @Parameter(defaultValue = "false")
+    boolean checksumFiles;
+
+    /**
+     * Compute SHA-1 as well as SHA-256, for {@code writeBundleIndex} and {@code checksumFiles}.
+     */
+    @Parameter(defaultValue = "false")
+    boolean sha1Checksums;
+
+    /**
+     * If set, write the {@code Export-Package} header of each bundle that has one to this file,
+     * as XML alongside bundles.xml.
+     */
+    @Parameter
+    File exportIndexFile;
+
+    /**
+     * Where the bundles go: {@code directory}, to stage them in {@code outputDirectory}, or
+     * {@code archive}, to write them (and bundles.xml, last) straight into {@code archiveFile}.
+     */
+    @Parameter(defaultValue = "directory")
+    String outputMode;
+
+    /**
+     * The kind of archive for the {@code archive} output mode: {@code zip}, {@code tar}, or {@code tar.gz}.
+     * Jars go into a zip stored, not compressed again.
+     */
+    @Parameter(defaultValue = "zip")
+    String archiveFormat;
+
+    /**
+     * The archive for the {@code archive} output mode. The default is
+     * {@code ${project.build.directory}/${project.build.finalName}-bundles.zip}, with the extension
+     * of the {@code archiveFormat}.
+     */
+    @Parameter
+    File archiveFile;
+
+    /**
+     * The directory within the archive for the bundles and bundles.xml.
+     */
+    @Parameter(defaultValue = "bundles/")
+    String archivePrefix;
+
+    /**
+     * The time for the bundles.xml entry in the archive. If the project does not set it, the entry
+     * gets the time of the newest bundle, so that the same bundles always make the same archive.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    String outputTimestamp;
+
+    /**
+     * Attach the archive to the project, with {@code archiveClassifier}, so that it is installed and deployed.
+     */
+    @Parameter(defaultValue = "false")
+    boolean attachArchive;
+
+    @Parameter(defaultValue = "bundles")
+    String archiveClassifier;
+
+    /**
+     * Where start levels come from. {@code declared}: the levels in the bundle info files.
+     * {@code report}: the declared levels, but also work out levels from the wiring between the bundles
+     * ({@code Import-Package}, {@code Export-Package} and {@code Require-Bundle}) and report them
+     * in {@code startLevelReport}. {@code computed}: use the levels from the wiring. These put each
+     * bundle one level above the bundles it needs, starting from {@code defaultStartLevel}, which
+     * keeps dependencies in order with as few levels as possible.
+     */
+    @Parameter(defaultValue = "declared")
+    String startLevelMode;
+
+    /**
+     * Where to report computed start levels next to the declared ones.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/start-levels.txt")
+    File startLevelReport;
+
+    /**
+     * Check that the collected bundles can resolve against each other: that every {@code Import-Package}
+     * is exported by some bundle at a version in its range, that every {@code Require-Bundle} is present
+     * at a version in its range, and that every fragment's host is present. {@code none}, {@code warn},
+     * or {@code fail}. The findings go to {@code wiringReport}.
+     */
+    @Parameter(defaultValue = "none")
+    String verifyWiring;
+
+    @Parameter(defaultValue = "${project.build.directory}/wiring-report.txt")
+    File wiringReport;
+
+    /**
+     * Packages that the framework provides, for {@code verifyWiring}, in addition to
+     * {@code java.*}, {@code javax.*}, {@code org.w3c.*}, {@code org.xml.sax.*}, {@code org.ietf.jgss},
+     * {@code org.omg.*}, {@code org.osgi.*}, {@code sun.*}, {@code com.sun.*}, and {@code jdk.*}.
+     * A trailing {@code .*} matches a package and everything under it.
+     */
+    @Parameter
+    List<String> systemPackages;
+
+    /**
+     * What to do about things that are in the bundles more than once: an artifact at more than one
+     * version, a package split across bundles, or classes in more than one bundle. {@code none},
+     * {@code warn}, {@code fail}, or {@code collapse}, which replaces the lower versions of an artifact
+     * with the highest one before anything is copied, and warns about the rest. The findings
+     * go to {@code duplicateReport}.
+     */
+    @Parameter(defaultValue = "none")
+    String duplicatePolicy;
+
+    @Parameter(defaultValue = "${project.build.directory}/duplicates-report.txt")
+    File duplicateReport;
+
+    /**
+     * Patterns of dependencies that the pattern entries in the bundle info files never stand for.
+     */
+    @Parameter
+    List<String> excludes;
+
+    /**
+     * Skip the whole goal when nothing that goes into it has changed since the last build: the
+     * bundle info files and the properties they use, the project's dependencies, the bundles that
+     * were resolved, the parameters of this goal and the plugin itself; and the bundles and
+     * bundles.xml (or the archive) are still as this goal left them. The record of the last build is
+     * kept in {@code cacheDirectory}. Builds with {@code -U} always run, as do bundle info files with
+     * version ranges (unless {@code lockRanges}) or missing bundles. So do bundles at SNAPSHOT versions
+     * that are neither dependencies nor in the reactor: only resolving them again can tell whether the
+     * repository has a newer one, so that the repository's update policy still applies to them.
+     * The reports ({@code startLevelReport}, {@code wiringReport}, {@code duplicateReport}) count as
+     * output; deleting one makes the goal run again.
+     */
+    @Parameter(defaultValue = "true")
+    boolean skipUnchanged;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    MojoExecution mojoExecution;
+
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    PluginDescriptor plugin;
+
     private FixedStringSearchInterpolator interpolator;
+    private CopyStrategy strategy;
+    private BundleCopier copier;
+    private ManifestCache manifestCache;
+    private ArtifactIndex artifactIndex;
+    private MissingArtifactCache missingArtifacts;
+    private VersionRangeCache versionRanges;
+    private CollectorMetrics metrics;
+    private List<String> digestAlgorithms;
+    private ArchiveFormat format;
+    private BundleArchive archive;
+    private Path archiveTemp;
+    private boolean missingBundles;
+    // set from the resolver threads.
+    private volatile boolean resolvedSnapshots;
+    private SessionCache sessionCache;
+    private final AtomicInteger sharedResolutions = new AtomicInteger();
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -167,145 +494,931 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
             new PropertiesBasedValueSource(additional)
         );
 
-        processInputs();
+        configureOutput();
+        checkParameters();
+        metrics = new CollectorMetrics();
+        sessionCache = SessionCache.forBuild(session == null ? null : session.getRequest());
+        List<SpecLoader.Spec> specs = loadSpecs();
+        String fingerprint = skipUnchanged ? fingerprint(specs) : null;
+        File record = fingerprint == null ? null : fingerprintRecord();
+        if (fingerprint != null && isUnchanged(record, fingerprint)) {
+            // so that the metrics of an earlier build do not pass for this one's.
+            metrics.setCounter("unchanged", 1);
+            saveMetrics();
+            return;
+        }
+        setUpCaches();
+        openArchive();
+        BundleLevels levels;
+        try {
+            levels = processInputs(specs);
+            finishArchive();
+        } finally {
+            discardArchive();
+        }
+        saveCaches();
+        if (format == null) {
+            getLog().info(String.format("Staged %d bundles in %s (%s); %d were already up to date",
+                copier.getCopied(), outputDirectory, copyStrategy, copier.getSkipped()));
+        }
+        writeMetrics();
+        if (record != null) {
+            recordFingerprint(record, fingerprint, levels);
+        }
+    }
 
+    /**
+     * Work out where the output goes, for the {@code archive} output mode.
+     */
+    private void configureOutput() throws MojoFailureException {
+        if ("directory".equals(outputMode)) {
+            return;
+        } else if (!"archive".equals(outputMode)) {
+            throw new MojoFailureException("Unknown outputMode " + outputMode);
+        }
+        try {
+            format = ArchiveFormat.forName(archiveFormat);
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException("Unknown archiveFormat " + archiveFormat);
+        }
+        if (archiveFile == null) {
+            archiveFile = new File(project.getBuild().getDirectory(),
+                project.getBuild().getFinalName() + "-bundles." + format.extension);
+        }
+        if (!archivePrefix.isEmpty() && !archivePrefix.endsWith("/")) {
+            archivePrefix = archivePrefix + "/";
+        }
     }
 
+    private void openArchive() throws MojoExecutionException {
+        if (format == null) {
+            return;
+        }
+        try {
+            Path dir = archiveFile.getAbsoluteFile().toPath().getParent();
+            Files.createDirectories(dir);
+            archiveTemp = Files.createTempFile(dir, archiveFile.getName(), ".tmp");
+            archive = BundleArchive.create(format, archiveTemp);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to create " + archiveFile, e);
+        }
+    }
 
-    private void processInputs() throws MojoFailureException, MojoExecutionException {
+    /**
+     * Close the archive and move it into place; bundles.xml is already in it.
+     */
+    private void finishArchive() throws MojoExecutionException {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.close();
+            AtomicFiles.move(archiveTemp, archiveFile.toPath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write " + archiveFile, e);
+        }
+        getLog().info(String.format("Wrote %d bundles to %s (%d bytes of content)",
+            archive.getEntries() - 1, archiveFile, archive.getBytesWritten()));
+        metrics.setCounter("bytesArchived", archive.getBytesWritten());
+        archive = null;
+        if (attachArchive) {
+            projectHelper.attachArtifact(project, format.extension, archiveClassifier, archiveFile);
+        }
+    }
 
-        Map<String, BundleSpec> bundlesByGav = new HashMap<>();
-        Map<Integer, List<BundleSpec>> bundlesByLevel = new TreeMap<>(); // keep those levels in order
+    /**
+     * Clean up after a failure part of the way through an archive.
+     */
+    private void discardArchive() {
+        if (archive != null) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                getLog().debug("Failed to close " + archiveTemp, e);
+            }
+            archive = null;
+        }
+        if (archiveTemp != null) {
+            try {
+                Files.deleteIfExists(archiveTemp);
+            } catch (IOException e) {
+                getLog().debug("Failed to delete " + archiveTemp, e);
+            }
+        }
+    }
 
+    /**
+     * Check the parameters that name modes, before anything else, so that a mistake is reported
+     * even when the last build's output is up to date.
+     */
+    private void checkParameters() throws MojoFailureException {
+        try {
+            strategy = CopyStrategy.forName(copyStrategy);
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException("Unknown copyStrategy " + copyStrategy);
+        }
+        if (!Arrays.asList("declared", "report", "computed").contains(startLevelMode)) {
+            throw new MojoFailureException("Unknown startLevelMode " + startLevelMode);
+        }
+        if (!Arrays.asList("none", "warn", "fail").contains(verifyWiring)) {
+            throw new MojoFailureException("Unknown verifyWiring " + verifyWiring);
+        }
+        if (!Arrays.asList("none", "warn", "fail", "collapse").contains(duplicatePolicy)) {
+            throw new MojoFailureException("Unknown duplicatePolicy " + duplicatePolicy);
+        }
+    }
+
+    private void setUpCaches() {
+        long start = System.nanoTime();
+        artifactIndex = new ArtifactIndex(project.getArtifacts(), reactorProjects);
+        metrics.addSince(CollectorMetrics.Phase.REACTOR_LOOKUP, null, start);
+        digestAlgorithms = new ArrayList<>();
+        if (writeBundleIndex || checksumFiles) {
+            digestAlgorithms.add(Digests.SHA_256);
+            if (sha1Checksums) {
+                digestAlgorithms.add(Digests.SHA_1);
+            }
+        }
+        copier = new BundleCopier(getLog(), skipUpToDateBundles, strategy, digestAlgorithms, checksumFiles);
+        manifestCache = new ManifestCache(useManifestCache ? new File(cacheDirectory, "manifests.bin") : null, getLog(), sessionCache);
+        manifestCache.load();
+        if (skipMissingArtifacts) {
+            missingArtifacts = new MissingArtifactCache(new File(cacheDirectory, "missing-artifacts.properties"),
+                TimeUnit.MINUTES.toMillis(missingArtifactTtl), getLog());
+            missingArtifacts.load(refreshMissingArtifacts);
+        }
+        versionRanges = new VersionRangeCache(TimeUnit.MINUTES.toMillis(versionRangeTtl), getLog());
+        versionRanges.loadCache(new File(cacheDirectory, "version-ranges.txt"));
+        if (lockRanges) {
+            versionRanges.loadLock(rangeLockFile);
+        }
+    }
+
+    private void saveCaches() {
+        try {
+            manifestCache.save();
+            if (missingArtifacts != null) {
+                missingArtifacts.save();
+            }
+            if (!versionRanges.isEmpty()) {
+                versionRanges.saveCache(new File(cacheDirectory, "version-ranges.txt"));
+                if (lockRanges) {
+                    versionRanges.saveLock(rangeLockFile);
+                }
+            }
+        } catch (IOException e) {
+            getLog().warn("Failed to save the bundle caches: " + e.getMessage());
+        }
+    }
+
+    private void writeMetrics() {
+        metrics.setCounter("bundlesStaged", copier.getCopied());
+        metrics.setCounter("bundlesUpToDate", copier.getSkipped());
+        metrics.setCounter("bytesCopied", copier.getBytesCopied());
+        metrics.setCounter("manifestCacheHits", manifestCache.getHits());
+        metrics.setCounter("manifestCacheMisses", manifestCache.getMisses());
+        metrics.setCounter("rangeCacheHits", versionRanges.getHits());
+        metrics.setCounter("rangeCacheMisses", versionRanges.getMisses());
+        metrics.setCounter("sharedResolutions", sharedResolutions.get());
+        getLog().info(metrics.summary());
+        saveMetrics();
+    }
 
-        /* read, check, merge, input files. */
+    private void saveMetrics() {
+        try {
+            metrics.write(metricsFile, slowestBundles);
+        } catch (IOException e) {
+            getLog().warn("Failed to write " + metricsFile + ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Read the bundle info files, and the files they include.
+     */
+    private List<SpecLoader.Spec> loadSpecs() throws MojoFailureException {
         if (bundleInfoFiles.size() == 0) {
             throw new MojoFailureException("No input files provided");
         }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, resolverThreads), new DaemonThreadFactory("reader"));
+        try {
+            return new SpecLoader(executor, sessionCache, interpolator, getLog()).load(bundleInfoFiles);
+        } finally {
+            executor.shutdownNow();
+            metrics.addSince(CollectorMetrics.Phase.PARSE, null, start);
+        }
+    }
 
-        for (File bif : bundleInfoFiles) {
-            BundlesInfo info;
-            try {
-                info = BundlesInfo.read(bif.toPath());
-            } catch (IOException e) {
-                throw new MojoFailureException("Unable to read " + bif.getAbsolutePath(), e);
+    private BundleLevels processInputs(List<SpecLoader.Spec> specs) throws MojoFailureException, MojoExecutionException {
+
+        BundleLevels levels = new BundleLevels();
+
+        /* check, merge, input files. */
+        long start = System.nanoTime();
+        List<BundlesInfo> infos = new ArrayList<>();
+        for (SpecLoader.Spec spec : specs) {
+            infos.add(spec.info);
+        }
+        infos = expandPatterns(infos);
+        metrics.addSince(CollectorMetrics.Phase.PARSE, null, start);
+
+        Map<String, String> skipped = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, resolverThreads), new DaemonThreadFactory("resolver"));
+        try {
+            Map<String, Future<Artifact>> resolutions = resolveAll(infos, executor);
+            Map<GavKey, Artifact> collapsed = Collections.emptyMap();
+            if ("collapse".equals(duplicatePolicy)) {
+                collapsed = collapseVersions(resolutions.values());
+            }
+            collectBundles(infos, resolutions, collapsed, skipped, levels);
+        } finally {
+            executor.shutdownNow();
+        }
+        /* Specs are all sitting in the map. Files are all copied. */
+        if (!"declared".equals(startLevelMode) || !"none".equals(verifyWiring) || !"none".equals(duplicatePolicy)) {
+            BundleWiring wiring = new BundleWiring(levels.inOrder());
+            if (!"none".equals(duplicatePolicy)) {
+                checkDuplicates(wiring);
+            }
+            if (!"none".equals(verifyWiring)) {
+                verifyWiring(wiring);
+            }
+            if (!"declared".equals(startLevelMode)) {
+                levels = planStartLevels(levels, wiring);
+            }
+        }
+        start = System.nanoTime();
+        writeMetadata(levels);
+        if (exportIndexFile != null) {
+            writeExportIndex(levels);
+        }
+        metrics.addSince(CollectorMetrics.Phase.WRITE_METADATA, null, start);
+        metrics.setCounter("bundles", levels.size());
+        if (skipMissingArtifacts) {
+            metrics.setCounter("bundlesSkipped", skipped.size());
+            writeSkippedReport(skipped);
+        }
+        missingBundles = !skipped.isEmpty();
+        return levels;
+    }
+
+    /**
+     * Digest what goes into this execution, apart from the resolved bundles, which are not known
+     * until they are resolved; {@link #recordFingerprint} lists those.
+     * @return the fingerprint, or null when the execution must run regardless.
+     */
+    private String fingerprint(List<SpecLoader.Spec> specs) {
+        if (session != null && session.getRequest().isUpdateSnapshots()) {
+            return null;
+        }
+        try {
+            GoalFingerprint fingerprint = new GoalFingerprint();
+            fingerprint.add("plugin", plugin == null ? null : plugin.getId())
+                .addFile("plugin file", plugin == null ? null : plugin.getPluginArtifact().getFile())
+                .add("parameters", Arrays.toString(new Object[] {
+                    outputDirectory, defaultStartLevel, skipMissingArtifacts, copyStrategy, outputMode, archiveFormat,
+                    archiveFile, archivePrefix, outputTimestamp, attachArchive, archiveClassifier, writeBundleIndex, checksumFiles,
+                    sha1Checksums, exportIndexFile, startLevelMode, startLevelReport, verifyWiring, wiringReport,
+                    systemPackages, duplicatePolicy, duplicateReport, excludes, lockRanges, rangeLockFile,
+                }));
+            for (SpecLoader.Spec spec : specs) {
+                fingerprint.add(spec.file.getAbsolutePath(), interpolator.interpolate(spec.text));
+            }
+            for (Artifact dep : project.getArtifacts()) {
+                fingerprint.add("dependency", dep.getId()).addFile("dependency file", dep.getFile());
+            }
+            for (MavenProject p : reactorProjects == null ? Collections.<MavenProject>emptyList() : reactorProjects) {
+                fingerprint.add("reactor", p.getId());
+            }
+            if (lockRanges) {
+                fingerprint.addFile("range lock", rangeLockFile);
+            }
+            return fingerprint.value();
+        } catch (IOException e) {
+            // the execution will run, and report it properly.
+            getLog().debug("Cannot fingerprint the inputs: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private File fingerprintRecord() {
+        String execution = mojoExecution == null ? "default" : mojoExecution.getExecutionId();
+        return new File(cacheDirectory, String.format("%s.%s-%s.fingerprint", project.getGroupId(), project.getArtifactId(), execution));
+    }
+
+    /**
+     * @return whether the last build had the same fingerprint, and its output is still in place;
+     * if not, the record is removed, so that no record outlives a failed build.
+     */
+    private boolean isUnchanged(File record, String fingerprint) throws MojoExecutionException {
+        try {
+            if (GoalFingerprint.isCurrent(record, fingerprint, getLog())) {
+                getLog().info(String.format("Nothing has changed since the last build; %s is up to date",
+                    format == null ? outputDirectory : archiveFile));
+                if (format != null && attachArchive) {
+                    projectHelper.attachArtifact(project, format.extension, archiveClassifier, archiveFile);
+                }
+                return true;
+            }
+            Files.deleteIfExists(record.toPath());
+            return false;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to check " + record, e);
+        }
+    }
+
+    /**
+     * Record the fingerprint, along with the bundles that were read and the files that were written.
+     * Nothing is recorded when the result might be different next time with the same inputs.
+     */
+    private void recordFingerprint(File record, String fingerprint, BundleLevels levels) {
+        if (missingBundles || (!lockRanges && versionRanges.getHits() + versionRanges.getMisses() > 0)) {
+            getLog().debug("Not recording a fingerprint; bundles are missing, or version ranges are not locked");
+            return;
+        }
+        if (resolvedSnapshots) {
+            getLog().debug("Not recording a fingerprint; snapshot bundles come from the repository, and may change there");
+            return;
+        }
+        List<File> files = new ArrayList<>();
+        for (BundleSpec spec : levels.inOrder()) {
+            files.add(spec.file);
+            if (format == null) {
+                files.add(new File(outputDirectory, spec.filename));
             }
+        }
+        files.add(format == null ? new File(outputDirectory, "bundles.xml") : archiveFile);
+        if (exportIndexFile != null) {
+            files.add(exportIndexFile);
+        }
+        if (!"declared".equals(startLevelMode)) {
+            files.add(startLevelReport);
+        }
+        if (!"none".equals(verifyWiring)) {
+            files.add(wiringReport);
+        }
+        if (!"none".equals(duplicatePolicy)) {
+            files.add(duplicateReport);
+        }
+        try {
+            GoalFingerprint.write(record, fingerprint, files);
+        } catch (IOException e) {
+            getLog().warn("Failed to write " + record + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace each pattern entry with an entry for each dependency that it matches, in a
+     * fixed order, leaving out the artifacts that some entry names outright.
+     */
+    private List<BundlesInfo> expandPatterns(List<BundlesInfo> infos) {
+        Set<String> named = new HashSet<>();
+        boolean patterns = false;
+        for (BundlesInfo info : infos) {
             for (LevelBundles levelBundles : info.levels) {
                 for (BundleInfo bi : levelBundles.bundles) {
-                    processBundle(levelBundles.level, bi, bundlesByGav, bundlesByLevel);
+                    String gav = interpolate(bi.gav);
+                    if (ArtifactPattern.isPattern(gav)) {
+                        patterns = true;
+                    } else {
+                        String[] pieces = gav.split("/");
+                        named.add(pieces.length == 4 ? pieces[0] + ':' + pieces[1] + ':' + pieces[2] : pieces[0] + ':' + pieces[1]);
+                    }
                 }
             }
         }
-        /* Specs are all sitting in the map. Files are all copied. */
-        writeMetadata(bundlesByLevel);
+        if (!patterns) {
+            return infos;
+        }
+        List<ArtifactPattern> globalExcludes = ArtifactPattern.parseAll(excludes);
+        List<BundlesInfo> expanded = new ArrayList<>();
+        for (BundlesInfo info : infos) {
+            List<LevelBundles> levels = new ArrayList<>();
+            for (LevelBundles levelBundles : info.levels) {
+                List<BundleInfo> bundles = new ArrayList<>();
+                for (BundleInfo bi : levelBundles.bundles) {
+                    String gav = interpolate(bi.gav);
+                    if (ArtifactPattern.isPattern(gav)) {
+                        expandPattern(bi, gav, globalExcludes, named, bundles);
+                    } else {
+                        bundles.add(bi);
+                    }
+                }
+                levels.add(new LevelBundles(levelBundles.level, bundles));
+            }
+            expanded.add(new BundlesInfo(levels));
+        }
+        return expanded;
     }
 
+    private void expandPattern(BundleInfo bi, String gav, List<ArtifactPattern> globalExcludes, Set<String> named, List<BundleInfo> bundles) {
+        List<ArtifactPattern> patternExcludes = new ArrayList<>(globalExcludes);
+        if (bi.exclude != null) {
+            patternExcludes.addAll(ArtifactPattern.parseAll(Collections.singletonList(interpolate(bi.exclude))));
+        }
+        List<Artifact> matches = artifactIndex.dependencies(ArtifactPattern.parse(gav), patternExcludes);
+        int count = 0;
+        for (Artifact artifact : matches) {
+            if (named.contains(GavKey.of(artifact).versionless())) {
+                continue;
+            }
+            String classifier = artifact.getClassifier();
+            String entry = classifier == null || classifier.isEmpty()
+                ? String.format("%s/%s/%s", artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion())
+                : String.format("%s/%s/%s/%s", artifact.getGroupId(), artifact.getArtifactId(), classifier, artifact.getVersion());
+            bundles.add(new BundleInfo(bi.start, entry, null, bi.location));
+            count++;
+        }
+        if (matches.isEmpty()) {
+            getLog().warn(String.format("%s matches no dependencies", gav));
+        } else {
+            getLog().info(String.format("%s matches %d dependencies", gav, count));
+        }
+    }
 
-    private void processBundle(int level, BundleInfo bundle,
-                                     Map<String, BundleSpec> bundlesByGav,
-                                     Map<Integer, List<BundleSpec>> bundlesByLevel
-    ) throws MojoExecutionException, MojoFailureException {
+    /**
+     * Pick the highest version of each artifact that the bundle info files ask for at more than one.
+     * @return the replacement for each lower version.
+     */
+    private Map<GavKey, Artifact> collapseVersions(Collection<Future<Artifact>> resolutions) throws MojoExecutionException {
+        Map<String, Artifact> highest = new HashMap<>();
+        List<Artifact> artifacts = new ArrayList<>();
+        for (Future<Artifact> resolution : resolutions) {
+            Artifact artifact = null;
+            try {
+                artifact = resolution == null ? null : resolution.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while resolving bundles", e);
+            } catch (ExecutionException e) {
+                // reported in order, by the main loop.
+                continue;
+            }
+            if (artifact == null) {
+                continue;
+            }
+            artifacts.add(artifact);
+            String key = GavKey.of(artifact).versionless();
+            Artifact best = highest.get(key);
+            if (best == null || new DefaultArtifactVersion(artifact.getVersion()).compareTo(new DefaultArtifactVersion(best.getVersion())) > 0) {
+                highest.put(key, artifact);
+            }
+        }
+        Map<GavKey, Artifact> replacements = new HashMap<>();
+        for (Artifact artifact : artifacts) {
+            Artifact best = highest.get(GavKey.of(artifact).versionless());
+            if (!best.getVersion().equals(artifact.getVersion()) && replacements.put(GavKey.of(artifact), best) == null) {
+                getLog().info(String.format("Collapsing %s to version %s", artifact.getId(), best.getVersion()));
+            }
+        }
+        return replacements;
+    }
 
-        Artifact artifact = null;
+    private void checkDuplicates(BundleWiring wiring) throws MojoExecutionException, MojoFailureException {
+        DuplicateAnalyzer analyzer;
         try {
-            artifact = getArtifact(bundle);
-        } catch (MojoExecutionException e) {
-            if (skipMissingArtifacts) {
-                // just skip
-                return;
+            analyzer = new DuplicateAnalyzer(wiring);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to list the contents of the bundles", e);
+        }
+        List<String> findings = new ArrayList<>();
+        findings.addAll(analyzer.getDuplicateVersions());
+        findings.addAll(analyzer.getSplitPackages());
+        findings.addAll(analyzer.getDuplicateClasses());
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("# %d artifacts at more than one version, %d split packages, %d sets of bundles sharing classes%n",
+            analyzer.getDuplicateVersions().size(), analyzer.getSplitPackages().size(), analyzer.getDuplicateClasses().size()));
+        for (String finding : findings) {
+            report.append(finding).append('\n');
+        }
+        try {
+            AtomicFiles.writeIfChanged(duplicateReport.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write " + duplicateReport, e);
+        }
+        if (findings.isEmpty()) {
+            getLog().info("No duplicate bundles, packages or classes");
+            return;
+        }
+        boolean fail = "fail".equals(duplicatePolicy);
+        for (String finding : findings) {
+            if (fail) {
+                getLog().error(finding);
+            } else {
+                getLog().warn(finding);
             }
-            throw e;
         }
+        String summary = String.format("%d duplicates among the bundles; see %s", findings.size(), duplicateReport);
+        if (fail) {
+            throw new MojoFailureException(summary);
+        }
+        getLog().warn(summary);
+    }
 
+    private void verifyWiring(BundleWiring wiring) throws MojoExecutionException, MojoFailureException {
+        List<String> system = new ArrayList<>(WiringVerifier.DEFAULT_SYSTEM_PACKAGES);
+        if (systemPackages != null) {
+            system.addAll(systemPackages);
+        }
+        WiringVerifier verifier = new WiringVerifier(wiring, system);
+        List<String> problems = verifier.getProblems();
 
-        if (verboseBundles) {
-            getLog().info(String.format("Bundle %s included", artifact.getId()));
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("# %d bundles, %d problems, %d unsatisfied optional requirements%n",
+            wiring.getBundles().size(), problems.size(), verifier.getOptionalMisses().size()));
+        for (String problem : problems) {
+            report.append(problem).append('\n');
+        }
+        for (String miss : verifier.getOptionalMisses()) {
+            report.append(miss).append('\n');
+        }
+        try {
+            AtomicFiles.writeIfChanged(wiringReport.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write " + wiringReport, e);
         }
 
-        String gav;
-        if (artifact.getClassifier() != null) {
-            gav = String.format("%s:%s:%s:%s", artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier(), artifact.getVersion());
-        } else {
-            gav = String.format("%s:%s::%s", artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+        if (problems.isEmpty()) {
+            getLog().info(String.format("All %d bundles resolve against each other", wiring.getBundles().size()));
+            return;
+        }
+        for (String problem : problems) {
+            if ("fail".equals(verifyWiring)) {
+                getLog().error(problem);
+            } else {
+                getLog().warn(problem);
+            }
         }
+        String summary = String.format("%d bundle wiring problems; see %s", problems.size(), wiringReport);
+        if ("fail".equals(verifyWiring)) {
+            throw new MojoFailureException(summary);
+        }
+        getLog().warn(summary);
+    }
 
-        BundleSpec prior = bundlesByGav.get(gav);
-        int effLevel;
-        String filename;
-        boolean start;
-        if (prior != null) {
-            start = prior.start;
-            effLevel = Math.min(prior.level, level);
-            if (effLevel != level) {
-                getLog().info(String.format("Multiple levels for %s; choosing %d", gav, effLevel));
-            }
-            bundlesByLevel.get(prior.level).remove(prior);
-            bundlesByGav.remove(gav);
-            filename = prior.filename;
-        } else {
-            effLevel = level;
-            filename = String.format("%s-%s-%s.jar", artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
-            File outputFile = new File(outputDirectory, filename);
-            copyFile(artifact.getFile(), outputFile);
-            start = bundle.start && !isJarFragment(outputFile);
+    /**
+     * Work out start levels from the wiring, and report them.
+     * @return the levels to write: the computed ones in {@code computed} mode, otherwise the declared ones.
+     */
+    private BundleLevels planStartLevels(BundleLevels declared, BundleWiring wiring) throws MojoExecutionException {
+        List<BundleSpec> bundles = wiring.getBundles();
+        StartLevelPlanner planner = new StartLevelPlanner(wiring, defaultStartLevel);
+        getLog().info(String.format("Start levels: %d bundles on %d declared levels; the wiring needs %d levels",
+            bundles.size(), declared.levels().size(), planner.levelCount()));
+        for (List<BundleSpec> cycle : planner.getCycles()) {
+            List<String> names = new ArrayList<>();
+            for (BundleSpec spec : cycle) {
+                names.add(spec.filename);
+            }
+            getLog().info("These bundles need each other, and share a start level: " + names);
+        }
+        writeStartLevelReport(bundles, planner);
 
+        if (!"computed".equals(startLevelMode)) {
+            return declared;
+        }
+        BundleLevels computed = new BundleLevels();
+        for (BundleSpec spec : bundles) {
+            computed.put(spec.atLevel(planner.level(spec)));
         }
+        return computed;
+    }
 
-        BundleSpec spec = new BundleSpec(gav, effLevel, start, filename);
-        bundlesByGav.put(gav, spec);
+    private void writeStartLevelReport(List<BundleSpec> bundles, final StartLevelPlanner planner) throws MojoExecutionException {
+        List<BundleSpec> sorted = new ArrayList<>(bundles);
+        // stable, so declared order within each computed level.
+        Collections.sort(sorted, new Comparator<BundleSpec>() {
+            @Override
+            public int compare(BundleSpec o1, BundleSpec o2) {
+                return Integer.compare(planner.level(o1), planner.level(o2));
+            }
+        });
+        StringBuilder report = new StringBuilder("# computed\tdeclared\tsymbolic name\tfile\n");
+        for (BundleSpec spec : sorted) {
+            report.append(planner.level(spec)).append('\t')
+                .append(spec.level).append('\t')
+                .append(spec.manifest.getSymbolicName()).append('\t')
+                .append(spec.filename).append('\n');
+        }
+        try {
+            AtomicFiles.writeIfChanged(startLevelReport.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write " + startLevelReport, e);
+        }
+    }
+
+    private String interpolate(String gav) {
+        long start = System.nanoTime();
+        String result = interpolator.interpolate(gav);
+        metrics.addSince(CollectorMetrics.Phase.INTERPOLATE, null, start);
+        return result;
+    }
 
-        List<BundleSpec> levelSpecs = bundlesByLevel.get(effLevel);
-        if (levelSpecs == null) {
-            levelSpecs = new ArrayList<>();
-            bundlesByLevel.put(effLevel, levelSpecs);
+    /**
+     * Wait for a bundle to be resolved; when skipping missing artifacts, note down those that are.
+     * @param resolution the pending resolution, or null for a bundle already known to be missing.
+     * @param skipped the skipped bundles, and why.
+     * @return the artifact, or null if it was skipped.
+     */
+    private Artifact awaitBundle(String gav, Future<Artifact> resolution, Map<String, String> skipped)
+        throws MojoExecutionException, MojoFailureException {
+        if (resolution == null) {
+            skipped.put(gav, "not found (remembered)");
+            return null;
+        }
+        try {
+            Artifact artifact = await(resolution, "resolving " + gav);
+            if (missingArtifacts != null) {
+                missingArtifacts.recordFound(gav);
+            }
+            return artifact;
+        } catch (MojoExecutionException e) {
+            if (!skipMissingArtifacts) {
+                throw e;
+            }
+            // only remember outright absence; other problems may be transient.
+            if (e.getCause() instanceof ArtifactNotFoundException) {
+                missingArtifacts.recordMissing(gav);
+                skipped.put(gav, "not found");
+            } else {
+                skipped.put(gav, e.getMessage());
+            }
+            return null;
         }
-        levelSpecs.add(spec);
     }
 
-    private boolean isJarFragment(File outputFile) throws MojoExecutionException, MojoFailureException {
-        JarFile jar;
+    private void writeSkippedReport(Map<String, String> skipped) throws MojoExecutionException {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, String> me : skipped.entrySet()) {
+            report.append(me.getKey()).append('\t').append(me.getValue()).append('\n');
+        }
         try {
-            jar = new JarFile(outputFile);
+            FileUtils.forceMkdir(skippedBundlesReport.getParentFile());
+            FileUtils.fileWrite(skippedBundlesReport, "utf-8", report.toString());
         } catch (IOException e) {
-            throw new MojoExecutionException("Failed to open dependency we just copied " + outputFile.getAbsolutePath(), e);
+            throw new MojoExecutionException("Failed to write " + skippedBundlesReport, e);
+        }
+        if (!skipped.isEmpty()) {
+            getLog().warn(String.format("Skipped %d missing bundles; see %s", skipped.size(), skippedBundlesReport));
+        }
+    }
+
+    /**
+     * Start resolving every distinct bundle in the inputs.
+     * @return a map from interpolated gav to the pending resolution.
+     */
+    private Map<String, Future<Artifact>> resolveAll(List<BundlesInfo> infos, ExecutorService executor) {
+        Map<String, Future<Artifact>> resolutions = new HashMap<>();
+        for (BundlesInfo info : infos) {
+            for (LevelBundles levelBundles : info.levels) {
+                for (BundleInfo bi : levelBundles.bundles) {
+                    final String gav = interpolate(bi.gav);
+                    if (missingArtifacts != null && !resolutions.containsKey(gav) && missingArtifacts.isKnownMissing(gav)) {
+                        getLog().debug("Not resolving " + gav + ", which was recently found to be missing");
+                        resolutions.put(gav, null);
+                    }
+                    if (!resolutions.containsKey(gav)) {
+                        resolutions.put(gav, executor.submit(new Callable<Artifact>() {
+                            @Override
+                            public Artifact call() throws Exception {
+                                return getArtifact(gav);
+                            }
+                        }));
+                    }
+                }
+            }
+        }
+        return resolutions;
+    }
+
+    /**
+     * Wait for work handed to another thread, and rethrow its failure as the mojo's.
+     * @param what what the work is doing, for messages.
+     */
+    private static <T> T await(Future<T> future, String what) throws MojoExecutionException, MojoFailureException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while " + what, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MojoExecutionException) {
+                throw (MojoExecutionException) cause;
+            }
+            if (cause instanceof MojoFailureException) {
+                throw (MojoFailureException) cause;
+            }
+            throw new MojoExecutionException("Unexpected error " + what, cause);
+        }
+    }
+
+    /**
+     * Say which entry of which bundle info file a failure belongs to.
+     */
+    private static MojoExecutionException located(BundleInfo bundle, MojoExecutionException e) {
+        return bundle.location == null ? e : new MojoExecutionException(String.format("%s: %s", bundle.location, e.getMessage()), e);
+    }
+
+    private static MojoFailureException located(BundleInfo bundle, MojoFailureException e) {
+        return bundle.location == null ? e : new MojoFailureException(String.format("%s: %s", bundle.location, e.getMessage()), e);
+    }
+
+    /**
+     * Run the bundles through resolution, staging, and merging. Resolution is already under way
+     * on the resolver threads; as each bundle comes out of it, in input order, it goes to the
+     * staging threads, and once more than {@link #stagingQueueDepth} are there, the oldest is
+     * merged into the levels. So the output is the same as if one thread had done it all in order.
+     */
+    private void collectBundles(List<BundlesInfo> infos, Map<String, Future<Artifact>> resolutions, Map<GavKey, Artifact> collapsed,
+                                Map<String, String> skipped, BundleLevels levels) throws MojoExecutionException, MojoFailureException {
+        ExecutorService stager = Executors.newFixedThreadPool(Math.max(1, stagingThreads), new DaemonThreadFactory("stager"));
+        // staged once per output file, however many entries ask for it; two copies must never race for one file.
+        Map<String, Future<StagedBundle>> staging = new HashMap<>();
+        Deque<PendingBundle> pending = new ArrayDeque<>();
+        int depth = Math.max(1, stagingQueueDepth);
+        try {
+            for (BundlesInfo info : infos) {
+                for (LevelBundles levelBundles : info.levels) {
+                    for (BundleInfo bi : levelBundles.bundles) {
+                        PendingBundle bundle = startBundle(levelBundles.level, bi, resolutions, collapsed, skipped, stager, staging);
+                        if (bundle != null) {
+                            pending.add(bundle);
+                        }
+                        while (pending.size() > depth) {
+                            mergeBundle(pending.remove(), levels);
+                        }
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                mergeBundle(pending.remove(), levels);
+            }
+        } finally {
+            stager.shutdownNow();
         }
-        final Manifest manifest;
+    }
+
+    /**
+     * Wait for one bundle to be resolved, and start staging it unless an earlier entry already has.
+     * @return the bundle on its way, or null if it was skipped.
+     */
+    private PendingBundle startBundle(int level, BundleInfo bi, Map<String, Future<Artifact>> resolutions, Map<GavKey, Artifact> collapsed,
+                                      Map<String, String> skipped, ExecutorService stager, Map<String, Future<StagedBundle>> staging)
+        throws MojoExecutionException, MojoFailureException {
+        String gav = interpolate(bi.gav);
+        Artifact artifact;
+        try {
+            artifact = awaitBundle(gav, resolutions.get(gav), skipped);
+        } catch (MojoExecutionException e) {
+            throw located(bi, e);
+        } catch (MojoFailureException e) {
+            throw located(bi, e);
+        }
+        if (artifact == null) {
+            return null;
+        }
+        if (collapsed.containsKey(GavKey.of(artifact))) {
+            artifact = collapsed.get(GavKey.of(artifact));
+        }
+        String filename = bundleFilename(artifact);
+        Future<StagedBundle> staged = staging.get(filename);
+        if (staged == null) {
+            if (artifact.getFile().isDirectory()) {
+                throw located(bi, new MojoExecutionException("Artifact has not been packaged yet."));
+            }
+            staged = stager.submit(stageTask(gav, artifact));
+            staging.put(filename, staged);
+        }
+        return new PendingBundle(level, bi, gav, artifact, staged);
+    }
+
+    /**
+     * Read the manifest of a bundle and, unless it goes into an archive, copy it. This runs on the staging
+     * threads, so, like {@link #getArtifact}, it must stay away from anything but the thread-safe parts.
+     */
+    private Callable<StagedBundle> stageTask(final String specGav, final Artifact artifact) {
+        return new Callable<StagedBundle>() {
+            @Override
+            public StagedBundle call() throws Exception {
+                // read the manifest from the artifact itself; no need to wait for the copy.
+                long startNanos = System.nanoTime();
+                BundleManifest manifest = readBundleManifest(artifact);
+                metrics.addSince(CollectorMetrics.Phase.MANIFEST, specGav, startNanos);
+                Map<String, String> digests = null;
+                if (archive == null) {
+                    digests = copyBundle(specGav, artifact);
+                }
+                return new StagedBundle(manifest, digests);
+            }
+        };
+    }
+
+    private Map<String, String> copyBundle(String specGav, Artifact artifact) throws MojoExecutionException {
+        long startNanos = System.nanoTime();
+        Map<String, String> digests = stageFile(artifact.getFile(), bundleFilename(artifact));
+        metrics.addSince(CollectorMetrics.Phase.COPY, specGav, startNanos);
+        return digests;
+    }
+
+    /**
+     * @return groupId-artifactId-version.jar, or groupId-artifactId-version-classifier.jar for a classified artifact.
+     */
+    private static String bundleFilename(Artifact artifact) {
+        String classifier = artifact.getClassifier();
+        if (classifier == null || classifier.isEmpty()) {
+            return String.format("%s-%s-%s.jar", artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+        }
+        return String.format("%s-%s-%s-%s.jar", artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), classifier);
+    }
+
+    private void mergeBundle(PendingBundle bundle, BundleLevels levels) throws MojoExecutionException, MojoFailureException {
         try {
-            manifest = jar.getManifest();
+            processBundle(bundle, levels);
+        } catch (MojoExecutionException e) {
+            throw located(bundle.info, e);
+        } catch (MojoFailureException e) {
+            throw located(bundle.info, e);
+        }
+    }
+
+    private void processBundle(PendingBundle bundle, BundleLevels levels) throws MojoExecutionException, MojoFailureException {
+        Artifact artifact = bundle.artifact;
+        int level = bundle.level;
+        if (verboseBundles) {
+            getLog().info(String.format("Bundle %s included", artifact.getId()));
+        }
+
+        GavKey gav = GavKey.of(artifact);
+        BundleSpec prior = levels.get(gav);
+        if (prior != null) {
+            BundleSpec spec = levels.put(prior.atLevel(level));
+            if (spec.level != level) {
+                getLog().info(String.format("Multiple levels for %s; choosing %d", gav, spec.level));
+            }
+            return;
+        }
+
+        StagedBundle staged = await(bundle.staging, "staging " + bundle.specGav);
+        boolean start = bundle.info.start && staged.manifest.get(BundleManifest.FRAGMENT_HOST) == null;
+        Map<String, String> digests = staged.digests;
+        if (digests == null) {
+            // into the archive, here, so that its entries go in input order.
+            digests = copyBundle(bundle.specGav, artifact);
+        }
+        levels.put(new BundleSpec(gav, level, start, bundleFilename(artifact), artifact.getFile(), staged.manifest, artifact.getFile().length(),
+            digests.get(Digests.SHA_256), digests.get(Digests.SHA_1)));
+    }
+
+    private BundleManifest readBundleManifest(Artifact artifact) throws MojoFailureException {
+        File artifactFile = artifact.getFile();
+        final BundleManifest manifest;
+        try {
+            manifest = manifestCache.get(artifactFile, artifact.isSnapshot());
         } catch (IOException e) {
-            throw new MojoFailureException("Failed to read manifest from dependency we just copied " + outputFile.getAbsolutePath(), e);
+            throw new MojoFailureException("Failed to read manifest from dependency " + artifactFile.getAbsolutePath(), e);
+        }
+        if (!manifest.isPresent()) {
+            throw new MojoFailureException("No manifest in dependency " + artifactFile.getAbsolutePath());
         }
-        final Attributes mattr = manifest.getMainAttributes();
-        // getValue is case-insensitive.
-        String mfVersion = mattr.getValue("Bundle-ManifestVersion");
+        String mfVersion = manifest.get(BundleManifest.BUNDLE_MANIFEST_VERSION);
         /*
          * '2' is the only legitimate bundle manifest version. Version 1 is long obsolete, and not supported
          * in current containers. There's no plan on the horizon for a version 3. No version at all indicates
          * that the jar file is not an OSGi bundle at all.
          */
         if (!"2".equals(mfVersion)) {
-            throw new MojoFailureException("Bundle-ManifestVersion is not '2' from dependency we just copied " + outputFile.getAbsolutePath());
+            throw new MojoFailureException("Bundle-ManifestVersion is not '2' from dependency " + artifactFile.getAbsolutePath());
         }
-        String host = mattr.getValue("Fragment-Host");
-        return host != null;
+        return manifest;
     }
 
-    private void writeMetadata(Map<Integer, List<BundleSpec>> bundlesByLevel) throws MojoExecutionException {
-        OutputStream os = null;
+    /**
+     * Write bundles.xml. The document is built in memory, and only replaces the existing
+     * file if it is different, so that an unchanged set of bundles leaves bundles.xml
+     * (and its modification time) alone for whatever packages the directory next.
+     * In the archive output mode, it is the last entry in the archive.
+     */
+    private void writeMetadata(BundleLevels levels) throws MojoExecutionException {
         File md = new File(outputDirectory, "bundles.xml");
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
 
         try {
-            os = new FileOutputStream(md);
             XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(os);
             writer = new IndentingXMLStreamWriter(writer);
             writer.writeStartDocument("utf-8", "1.0");
             writer.writeStartElement("bundles");
-            for (Integer level : bundlesByLevel.keySet()) {
+            for (Integer level : levels.levels()) {
                 writer.writeStartElement("level");
                 writer.writeAttribute("level", Integer.toString(level));
-                for (BundleSpec spec : bundlesByLevel.get(level)) {
+                for (BundleSpec spec : levels.at(level)) {
                     writer.writeStartElement("bundle");
                     writer.writeAttribute("start", Boolean.toString(spec.start));
+                    if (writeBundleIndex) {
+                        writeIndexAttributes(writer, spec);
+                    }
                     writer.writeCharacters(spec.filename);
                     writer.writeEndElement();
                 }
@@ -314,23 +1427,95 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
             writer.writeEndElement();
             writer.writeEndDocument();
             writer.flush();
+            writer.close();
 
+            if (archive != null) {
+                archive.addBytes(archivePrefix + md.getName(), os.toByteArray(), metadataTime(levels));
+            } else if (AtomicFiles.writeIfChanged(md.toPath(), os.toByteArray())) {
+                getLog().info("Wrote " + md);
+            } else {
+                getLog().info("Metadata unchanged in " + md);
+            }
         } catch (IOException | XMLStreamException e) {
             throw new MojoExecutionException("Failed to write metadata file " + md.toString(), e);
-        } finally {
-            IOUtils.closeQuietly(os);
         }
     }
 
-    private void copyFile(File artifact, File destFile) throws MojoExecutionException {
-        try {
-            getLog().info("Copying " + artifact.getAbsolutePath() + destFile);
+    /**
+     * @return the time for bundles.xml in the archive: {@code outputTimestamp}, or else that of the newest bundle.
+     */
+    private long metadataTime(BundleLevels levels) throws MojoExecutionException {
+        if (outputTimestamp != null && outputTimestamp.trim().length() > 1) {
+            return OsgiVersionMojo.parseOutputTimestamp(outputTimestamp.trim());
+        }
+        long newest = 0;
+        for (BundleSpec spec : levels.inOrder()) {
+            newest = Math.max(newest, spec.file.lastModified());
+        }
+        return newest;
+    }
+
+    private static void writeIndexAttributes(XMLStreamWriter writer, BundleSpec spec) throws XMLStreamException {
+        writeOptionalAttribute(writer, "symbolicName", spec.manifest.getSymbolicName());
+        writeOptionalAttribute(writer, "version", spec.manifest.get(BundleManifest.BUNDLE_VERSION));
+        writeOptionalAttribute(writer, "fragmentHost", spec.manifest.get(BundleManifest.FRAGMENT_HOST));
+        writer.writeAttribute("size", Long.toString(spec.size));
+        writeOptionalAttribute(writer, "sha256", spec.sha256);
+        writeOptionalAttribute(writer, "sha1", spec.sha1);
+    }
+
+    private static void writeOptionalAttribute(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        if (value != null) {
+            writer.writeAttribute(name, value.trim());
+        }
+    }
 
-            if (artifact.isDirectory()) {
-                throw new MojoExecutionException("Artifact has not been packaged yet.");
+    /**
+     * Write the Export-Package headers, in the same order as bundles.xml.
+     */
+    private void writeExportIndex(BundleLevels levels) throws MojoExecutionException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            XMLStreamWriter writer = new IndentingXMLStreamWriter(XMLOutputFactory.newFactory().createXMLStreamWriter(os));
+            writer.writeStartDocument("utf-8", "1.0");
+            writer.writeStartElement("exports");
+            for (Integer level : levels.levels()) {
+                for (BundleSpec spec : levels.at(level)) {
+                    String exports = spec.manifest.get(BundleManifest.EXPORT_PACKAGE);
+                    if (exports == null) {
+                        continue;
+                    }
+                    writer.writeStartElement("bundle");
+                    writer.writeAttribute("filename", spec.filename);
+                    writeOptionalAttribute(writer, "symbolicName", spec.manifest.getSymbolicName());
+                    writeOptionalAttribute(writer, "version", spec.manifest.get(BundleManifest.BUNDLE_VERSION));
+                    writer.writeCharacters(exports.trim());
+                    writer.writeEndElement();
+                }
             }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+            AtomicFiles.writeIfChanged(exportIndexFile.toPath(), os.toByteArray());
+        } catch (IOException | XMLStreamException e) {
+            throw new MojoExecutionException("Failed to write export index " + exportIndexFile, e);
+        }
+    }
 
-            FileUtils.copyFile(artifact, destFile);
+    /**
+     * Put a bundle into the output directory or the archive.
+     */
+    private Map<String, String> stageFile(File artifact, String filename) throws MojoExecutionException {
+        if (archive != null) {
+            try {
+                return archive.addFile(archivePrefix + filename, artifact, digestAlgorithms);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Error adding artifact " + artifact + " to " + archiveFile, e);
+            }
+        }
+        File destFile = new File(outputDirectory, filename);
+        try {
+            return copier.copy(artifact, destFile);
         } catch (IOException e) {
             throw new MojoExecutionException("Error copying artifact from " + artifact + " to " + destFile, e);
         }
@@ -338,24 +1523,23 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
 
 
     private String getArtifactVersionFromDependencies(String groupId, String artifactId) {
-        for (Artifact dep : project.getArtifacts()) {
-            if (groupId.equals(dep.getGroupId()) && artifactId.equals(dep.getArtifactId())) {
-                getLog().debug(String.format("Found dependency %s:%s:%s", groupId, artifactId, dep.getVersion()));
-                return dep.getVersion();
-            }
+        String version = artifactIndex.dependencyVersion(groupId, artifactId);
+        if (version != null) {
+            getLog().debug(String.format("Found dependency %s:%s:%s", groupId, artifactId, version));
         }
-        return null;
+        return version;
     }
 
-    private Artifact getArtifact(BundleInfo bundle) throws MojoExecutionException, MojoFailureException {
-        Artifact artifact;
-
+    /**
+     * Resolve one bundle. This runs on the resolver threads, so it must not touch
+     * anything but the (read-only) project model, the resolver and the thread-safe caches.
+     * @param gav the bundle coordinates, already interpolated.
+     */
+    private Artifact getArtifact(String gav) throws MojoExecutionException, MojoFailureException {
         /*
-         * Anything in the gav may be interpolated.
          * Version may be "-dependency-" to look for the artifact as a dependency.
          */
 
-        String gav = interpolator.interpolate(bundle.gav);
         String[] pieces = gav.split("/");
         String groupId = pieces[0];
         String artifactId = pieces[1];
@@ -368,8 +1552,10 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
             versionStr = pieces[3];
         }
 
+        long start = System.nanoTime();
         if ("-dependency-".equals(versionStr)) {
             versionStr = getArtifactVersionFromDependencies(groupId, artifactId);
+            metrics.addSince(CollectorMetrics.Phase.REACTOR_LOOKUP, gav, start);
             if (versionStr == null) {
                 throw new MojoFailureException(String.format("Request for %s:%s as a dependency, but it is not a dependency", groupId, artifactId));
             }
@@ -381,26 +1567,88 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
         } catch (InvalidVersionSpecificationException e1) {
             throw new MojoExecutionException("Bad version range " + versionStr, e1);
         }
+        if (vr.getRecommendedVersion() == null) {
+            start = System.nanoTime();
+            vr = VersionRange.createFromVersion(resolveRange(groupId, artifactId, classifier, vr, versionStr));
+            metrics.addSince(CollectorMetrics.Phase.RESOLVE, gav, start);
+        }
 
-        artifact = factory.createDependencyArtifact(groupId, artifactId, vr,
+        final Artifact artifact = factory.createDependencyArtifact(groupId, artifactId, vr,
                 "jar", classifier, Artifact.SCOPE_COMPILE);
 
         // Maven 3 will search the reactor for the artifact but Maven 2 does not
         // to keep consistent behaviour, we search the reactor ourselves.
+        start = System.nanoTime();
         Artifact result = getArtifactFomReactor(artifact);
+        metrics.addSince(CollectorMetrics.Phase.REACTOR_LOOKUP, gav, start);
         if (result != null) {
             return result;
         }
 
+        start = System.nanoTime();
+        // set if this execution does the resolving, rather than some other one in the build.
+        final boolean[] resolvedHere = new boolean[1];
+        try {
+            Artifact resolved = sessionCache.resolve(artifact.getId(), remoteRepos, new Callable<Artifact>() {
+                @Override
+                public Artifact call() throws Exception {
+                    resolvedHere[0] = true;
+                    try {
+                        resolver.resolve(artifact, remoteRepos, local);
+                    } catch (ArtifactResolutionException e) {
+                        throw new MojoExecutionException("Unable to resolve artifact.", e);
+                    } catch (ArtifactNotFoundException e) {
+                        throw new MojoExecutionException("Unable to find artifact.", e);
+                    }
+                    return artifact;
+                }
+            });
+            if (resolved.isSnapshot()) {
+                resolvedSnapshots = true;
+            }
+            return resolved;
+        } finally {
+            if (!resolvedHere[0]) {
+                sharedResolutions.incrementAndGet();
+            }
+            metrics.addSince(CollectorMetrics.Phase.RESOLVE, gav, start);
+        }
+    }
+
+    /**
+     * Pick the version for a version range: the one we remember, if any, or else the
+     * best match from the repository metadata.
+     */
+    @SuppressWarnings("deprecation")
+    private String resolveRange(String groupId, String artifactId, String classifier, VersionRange range, String rangeSpec)
+        throws MojoExecutionException {
+        String version = versionRanges.get(groupId, artifactId, rangeSpec);
+        if (version != null) {
+            getLog().debug(String.format("Using %s for %s:%s:%s", version, groupId, artifactId, rangeSpec));
+            return version;
+        }
+        if (lockRanges) {
+            getLog().warn(String.format("%s:%s:%s is not in %s; resolving it", groupId, artifactId, rangeSpec, rangeLockFile));
+        }
+        Artifact probe = factory.createDependencyArtifact(groupId, artifactId, range, "jar", classifier, Artifact.SCOPE_COMPILE);
+        List<ArtifactVersion> versions;
         try {
-            resolver.resolve(artifact, remoteRepos, local);
-        } catch (ArtifactResolutionException e) {
-            throw new MojoExecutionException("Unable to resolve artifact.", e);
-        } catch (ArtifactNotFoundException e) {
-            throw new MojoExecutionException("Unable to find artifact.", e);
+            versions = retrieveAvailableVersions(probe);
+        } catch (org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException e) {
+            throw new MojoExecutionException(String.format("Unable to find the versions of %s:%s", groupId, artifactId), e);
         }
+        ArtifactVersion match = range.matchVersion(versions);
+        if (match == null) {
+            throw new MojoExecutionException(String.format("No version of %s:%s matches %s", groupId, artifactId, rangeSpec));
+        }
+        versionRanges.put(groupId, artifactId, rangeSpec, match.toString());
+        return match.toString();
+    }
 
-        return artifact;
+    @SuppressWarnings({"unchecked", "deprecation"})
+    private List<ArtifactVersion> retrieveAvailableVersions(Artifact artifact)
+        throws org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException {
+        return metadataSource.retrieveAvailableVersions(artifact, local, remoteRepos);
     }
 
     /**
@@ -411,58 +1659,61 @@ public class RosapiBundleCollectorMojo extends AbstractMojo {
      * not be found.
      */
     private Artifact getArtifactFomReactor(Artifact artifact) {
-        // check project dependencies first off
-        for (Artifact a : project.getArtifacts()) {
-            if (equals(artifact, a) && hasFile(a)) {
-                return a;
-            }
-        }
+        // dependencies first, then the reactor projects; the index keeps that order.
+        return artifactIndex.find(artifact);
+    }
 
-        // check reactor projects
-        for (MavenProject p : reactorProjects == null ? Collections.<MavenProject>emptyList() : reactorProjects) {
-            // check the main artifact
-            if (equals(artifact, p.getArtifact()) && hasFile(p.getArtifact())) {
-                return p.getArtifact();
-            }
+    /**
+     * A resolved bundle on its way through staging to its level.
+     */
+    private static final class PendingBundle {
+        final int level;
+        final BundleInfo info;
+        final String specGav;
+        final Artifact artifact;
+        final Future<StagedBundle> staging;
 
-            // check any side artifacts
-            for (Artifact a : (List<Artifact>) p.getAttachedArtifacts()) {
-                if (equals(artifact, a) && hasFile(a)) {
-                    return a;
-                }
-            }
+        PendingBundle(int level, BundleInfo info, String specGav, Artifact artifact, Future<StagedBundle> staging) {
+            this.level = level;
+            this.info = info;
+            this.specGav = specGav;
+            this.artifact = artifact;
+            this.staging = staging;
         }
-
-        // not available
-        return null;
     }
 
     /**
-     * Returns <code>true</code> if the artifact has a file.
-     *
-     * @param artifact the artifact (may be null)
-     * @return <code>true</code> if and only if the artifact is non-null and has a file.
+     * What staging found out about a bundle.
      */
-    private static boolean hasFile(Artifact artifact) {
-        return artifact != null && artifact.getFile() != null && artifact.getFile().isFile();
+    private static final class StagedBundle {
+        final BundleManifest manifest;
+        /**
+         * Null when the bundle is still to be added to the archive.
+         */
+        final Map<String, String> digests;
+
+        StagedBundle(BundleManifest manifest, Map<String, String> digests) {
+            this.manifest = manifest;
+            this.digests = digests;
+        }
     }
 
     /**
-     * Null-safe compare of two artifacts based on groupId, artifactId, version, type and classifier.
-     *
-     * @param a the first artifact.
-     * @param b the second artifact.
-     * @return <code>true</code> if and only if the two artifacts have the same groupId, artifactId, version,
-     * type and classifier.
-     */
-    private static boolean equals(Artifact a, Artifact b) {
-        //CHECKSTYLE:OFF
-        return a == b || !(a == null || b == null)
-                && StringUtils.equals(a.getGroupId(), b.getGroupId())
-                && StringUtils.equals(a.getArtifactId(), b.getArtifactId())
-                && StringUtils.equals(a.getVersion(), b.getVersion())
-                && StringUtils.equals(a.getType(), b.getType())
-                && StringUtils.equals(a.getClassifier(), b.getClassifier());
-        //CHECKSTYLE:ON
+     * Daemon threads, so that a failed build never waits for stray downloads or copies.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String role;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String role) {
+            this.role = role;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "collect-bundles-" + role + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -0,0 +1,137 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * What the executions of this plugin's goals in one build share: the artifacts they have resolved,
+ * the manifests and bundle info files they have read, and the time that stands for the build in version qualifiers. Maven gives all the projects of a build the same execution
+ * request, also when it builds them in parallel with {@code -T}, so the request identifies the build;
+ * the cache is only weakly reachable from it, and goes away with it.
+ */
+final class SessionCache {
+    private static final Map<Object, SessionCache> CACHES = new WeakHashMap<>();
+
+    private final ConcurrentMap<String, FutureTask<Artifact>> artifacts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, BundleManifest> manifests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, BundlesInfo> specs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FutureTask<Long>> times = new ConcurrentHashMap<>();
+
+    /**
+     * @param build what identifies the build, or null for a cache of one's own.
+     */
+    static SessionCache forBuild(Object build) {
+        if (build == null) {
+            return new SessionCache();
+        }
+        synchronized (CACHES) {
+            SessionCache cache = CACHES.get(build);
+            if (cache == null) {
+                cache = new SessionCache();
+                CACHES.put(build, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Resolve an artifact once per build. When two executions ask at the same time, one resolves,
+     * and the other waits for it. A failure is not remembered, so that each execution that
+     * asks for the artifact tries again, and reports the failure as its own. Projects with different
+     * repositories do not share: what one project can resolve, another may not be able to.
+     * @param id the artifact's coordinates, with a version rather than a range.
+     * @param repositories the remote repositories to resolve it from.
+     */
+    Artifact resolve(String id, List<ArtifactRepository> repositories, Callable<Artifact> resolution) throws MojoExecutionException {
+        StringBuilder key = new StringBuilder(id);
+        for (ArtifactRepository repository : repositories) {
+            key.append(' ').append(repository.getId()).append('=').append(repository.getUrl());
+        }
+        return once(artifacts, key.toString(), resolution, "resolving " + id);
+    }
+
+    /**
+     * Work out a time once per build, e.g. the time of the last commit.
+     * As with artifacts, a failure is not remembered.
+     * @return the time, in milliseconds since the epoch.
+     */
+    long time(String source, Callable<Long> computation) throws MojoExecutionException {
+        return once(times, source, computation, "finding the " + source + " time");
+    }
+
+    private static <T> T once(ConcurrentMap<String, FutureTask<T>> results, String key, Callable<T> computation, String what)
+        throws MojoExecutionException {
+        FutureTask<T> task = new FutureTask<>(computation);
+        FutureTask<T> existing = results.putIfAbsent(key, task);
+        if (existing == null) {
+            existing = task;
+            task.run();
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while " + what, e);
+        } catch (ExecutionException e) {
+            results.remove(key, existing);
+            if (e.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) e.getCause();
+            }
+            throw new MojoExecutionException("Unexpected error " + what, e.getCause());
+        }
+    }
+
+    /**
+     * @return the manifest of a file, as long as it has not changed since it was read; otherwise null.
+     */
+    BundleManifest getManifest(File file, long size, long lastModified) {
+        return manifests.get(manifestKey(file, size, lastModified));
+    }
+
+    void putManifest(File file, long size, long lastModified, BundleManifest manifest) {
+        manifests.put(manifestKey(file, size, lastModified), manifest);
+    }
+
+    /**
+     * The path is part of the key since the parsed entries record where they came from.
+     * @param digest the digest of the content of a bundle info file.
+     * @return what that content was parsed to, or null.
+     */
+    BundlesInfo getSpec(File file, String digest) {
+        return specs.get(file.getAbsolutePath() + '\t' + digest);
+    }
+
+    void putSpec(File file, String digest, BundlesInfo spec) {
+        specs.put(file.getAbsolutePath() + '\t' + digest, spec);
+    }
+
+    private static String manifestKey(File file, long size, long lastModified) {
+        return file.getAbsolutePath() + '\t' + size + '\t' + lastModified;
+    }
+}
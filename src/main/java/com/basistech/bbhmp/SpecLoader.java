@@ -0,0 +1,188 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.interpolation.fixed.FixedStringSearchInterpolator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Load the bundle info files, and the files that they include. The files are parsed in parallel,
+ * one round per depth of inclusion, and each distinct content is only parsed once per build.
+ * The order in which the levels are merged is fixed by the files, not by the parsing: each file's
+ * includes come before the file itself, in the order they appear, and the given files come in the order
+ * given. A file that is reached more than once is only loaded the first time; an inclusion cycle is an error.
+ */
+final class SpecLoader {
+    private final ExecutorService executor;
+    private final SessionCache cache;
+    private final FixedStringSearchInterpolator interpolator;
+    private final Log log;
+    private final Map<File, Future<Spec>> parsed = new HashMap<>();
+
+    SpecLoader(ExecutorService executor, SessionCache cache, FixedStringSearchInterpolator interpolator, Log log) {
+        this.executor = executor;
+        this.cache = cache;
+        this.interpolator = interpolator;
+        this.log = log;
+    }
+
+    /**
+     * @return each file that was loaded, in merge order.
+     */
+    List<Spec> load(List<File> files) throws MojoFailureException {
+        List<File> roots = new ArrayList<>();
+        for (File file : files) {
+            roots.add(canonical(file));
+        }
+        parseAll(roots);
+        Map<File, Spec> loaded = new LinkedHashMap<>();
+        for (File root : roots) {
+            if (loaded.containsKey(root)) {
+                log.debug(root + " was already included");
+                continue;
+            }
+            visit(root, new ArrayList<File>(), loaded);
+        }
+        return new ArrayList<>(loaded.values());
+    }
+
+    /**
+     * Parse the files, then what they include, and so on, a round at a time.
+     */
+    private void parseAll(List<File> roots) throws MojoFailureException {
+        List<File> round = roots;
+        while (!round.isEmpty()) {
+            for (final File file : round) {
+                if (!parsed.containsKey(file)) {
+                    parsed.put(file, executor.submit(new Callable<Spec>() {
+                        @Override
+                        public Spec call() throws IOException {
+                            return parse(file);
+                        }
+                    }));
+                }
+            }
+            List<File> next = new ArrayList<>();
+            for (File file : round) {
+                for (File included : get(file).includes) {
+                    if (!parsed.containsKey(included)) {
+                        next.add(included);
+                    }
+                }
+            }
+            round = next;
+        }
+    }
+
+    private void visit(File file, List<File> path, Map<File, Spec> loaded) throws MojoFailureException {
+        path.add(file);
+        Spec spec = get(file);
+        Set<File> seen = new HashSet<>();
+        for (File included : spec.includes) {
+            if (path.contains(included)) {
+                List<File> cycle = new ArrayList<>(path.subList(path.indexOf(included), path.size()));
+                cycle.add(included);
+                throw new MojoFailureException("Bundle info files include each other: " + cycle);
+            }
+            if (!seen.add(included)) {
+                log.warn(String.format("%s includes %s more than once", file, included));
+            } else if (!loaded.containsKey(included)) {
+                visit(included, path, loaded);
+            }
+        }
+        path.remove(path.size() - 1);
+        loaded.put(file, spec);
+    }
+
+    private Spec get(File file) throws MojoFailureException {
+        try {
+            return parsed.get(file).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while reading " + file, e);
+        } catch (ExecutionException e) {
+            throw new MojoFailureException("Unable to read " + file.getAbsolutePath(), e.getCause());
+        }
+    }
+
+    private Spec parse(File file) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        String digest = Digests.hex(Digests.newDigest(Digests.SHA_256).digest(content));
+        BundlesInfo info = cache.getSpec(file, digest);
+        if (info == null) {
+            info = BundlesInfo.parse(file.getAbsolutePath(), content);
+            cache.putSpec(file, digest, info);
+        }
+        List<File> includes = new ArrayList<>();
+        for (String include : info.includes) {
+            File included = new File(interpolator.interpolate(include));
+            if (!included.isAbsolute()) {
+                included = new File(file.getParentFile(), included.getPath());
+            }
+            if (!included.isFile()) {
+                throw new IOException(String.format("%s includes %s, which does not exist", file, included));
+            }
+            includes.add(canonical(included));
+        }
+        return new Spec(file, new String(content, StandardCharsets.UTF_8), info, Collections.unmodifiableList(includes));
+    }
+
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    /**
+     * A loaded bundle info file.
+     */
+    static final class Spec {
+        final File file;
+        /**
+         * The content, as text.
+         */
+        final String text;
+        final BundlesInfo info;
+        final List<File> includes;
+
+        Spec(File file, String text, BundlesInfo info, List<File> includes) {
+            this.file = file;
+            this.text = text;
+            this.info = info;
+            this.includes = includes;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns start levels from the wiring between bundles. Each bundle goes one level above the
+ * highest of the bundles that provide what it needs, and no higher, so that each level is as wide
+ * as it can be and the framework can start the bundles of a level together. Bundles that need each
+ * other, around a cycle, share a level. A fragment goes at the level of its host.
+ */
+class StartLevelPlanner {
+    private final BundleWiring wiring;
+    private final int[] levels;
+    private final List<List<BundleSpec>> cycles = new ArrayList<>();
+
+    /**
+     * @param base the level for bundles that need nothing from the others.
+     */
+    StartLevelPlanner(BundleWiring wiring, int base) {
+        this.wiring = wiring;
+        int[][] needs = wiring.dependencies();
+        int[] component = components(needs);
+        int componentCount = 0;
+        for (int c : component) {
+            componentCount = Math.max(componentCount, c + 1);
+        }
+        List<List<Integer>> members = new ArrayList<>();
+        for (int c = 0; c < componentCount; c++) {
+            members.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < component.length; i++) {
+            members.get(component[i]).add(i);
+        }
+
+        /*
+         * Components come out of Tarjan's algorithm with everything that a component needs
+         * ahead of it, so a single pass in component order sees every provider's depth first.
+         */
+        int[] depth = new int[componentCount];
+        for (int c = 0; c < componentCount; c++) {
+            for (int bundle : members.get(c)) {
+                for (int provider : needs[bundle]) {
+                    if (component[provider] != c) {
+                        depth[c] = Math.max(depth[c], depth[component[provider]] + 1);
+                    }
+                }
+            }
+            if (members.get(c).size() > 1) {
+                List<BundleSpec> cycle = new ArrayList<>();
+                for (int bundle : members.get(c)) {
+                    cycle.add(wiring.getBundles().get(bundle));
+                }
+                cycles.add(cycle);
+            }
+        }
+
+        List<BundleSpec> bundles = wiring.getBundles();
+        levels = new int[bundles.size()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = base + depth[component[i]];
+        }
+        for (int i = 0; i < levels.length; i++) {
+            for (BundleSpec host : wiring.hosts(bundles.get(i))) {
+                levels[i] = Math.max(levels[i], levels[wiring.position(host)]);
+            }
+        }
+    }
+
+    /**
+     * @return the computed level of a bundle.
+     */
+    int level(BundleSpec bundle) {
+        return levels[wiring.position(bundle)];
+    }
+
+    /**
+     * @return the number of distinct levels.
+     */
+    int levelCount() {
+        int[] sorted = levels.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the groups of bundles that need each other, and so share a level.
+     */
+    List<List<BundleSpec>> getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Tarjan's strongly connected components, without recursion, since a chain of
+     * dependencies can be as long as the list of bundles.
+     * @return the component of each node; a component's number is higher than those of
+     * all the components it has edges to.
+     */
+    static int[] components(int[][] edges) {
+        int n = edges.length;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] component = new int[n];
+        int[] next = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] calls = new int[n];
+        Arrays.fill(index, -1);
+        int stackSize = 0;
+        int counter = 0;
+        int components = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int callCount = 0;
+            calls[callCount++] = root;
+            index[root] = counter;
+            low[root] = counter;
+            counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (callCount > 0) {
+                int v = calls[callCount - 1];
+                if (next[v] < edges[v].length) {
+                    int w = edges[v][next[v]++];
+                    if (index[w] == -1) {
+                        index[w] = counter;
+                        low[w] = counter;
+                        counter++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        calls[callCount++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                callCount--;
+                if (callCount > 0) {
+                    int parent = calls[callCount - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        component[w] = components;
+                    } while (w != v);
+                    components++;
+                }
+            }
+        }
+        return component;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A tar of bundles, in the POSIX ustar format: plain files only, names up to 255 bytes,
+ * which is all that a directory of bundles needs.
+ */
+class TarBundleArchive extends BundleArchive {
+    private static final int BLOCK = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+
+    private final OutputStream out;
+
+    TarBundleArchive(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    Map<String, String> addFile(String name, File file, List<String> algorithms) throws IOException {
+        long size = file.length();
+        out.write(header(name, size, file.lastModified()));
+        Map<String, String> digests = copyContent(file, out, algorithms);
+        pad(size);
+        return digests;
+    }
+
+    @Override
+    void addBytes(String name, byte[] content, long time) throws IOException {
+        out.write(header(name, content.length, time));
+        out.write(content);
+        pad(content.length);
+        entryWritten(content.length);
+    }
+
+    /**
+     * Finish with the two empty blocks that mark the end of the archive.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write(new byte[2 * BLOCK]);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void pad(long size) throws IOException {
+        int remainder = (int) (size % BLOCK);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK - remainder]);
+        }
+    }
+
+    private static byte[] header(String name, long size, long time) throws IOException {
+        byte[] header = new byte[BLOCK];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length <= NAME_LENGTH) {
+            System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        } else {
+            // split into prefix and name at a slash.
+            int split = name.lastIndexOf('/', PREFIX_LENGTH);
+            byte[] prefix = split > 0 ? name.substring(0, split).getBytes(StandardCharsets.UTF_8) : null;
+            byte[] rest = split > 0 ? name.substring(split + 1).getBytes(StandardCharsets.UTF_8) : nameBytes;
+            if (prefix == null || prefix.length > PREFIX_LENGTH || rest.length > NAME_LENGTH) {
+                throw new IOException("Name too long for a tar archive: " + name);
+            }
+            System.arraycopy(rest, 0, header, 0, rest.length);
+            System.arraycopy(prefix, 0, header, 345, prefix.length);
+        }
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, TimeUnit.MILLISECONDS.toSeconds(time));
+        header[156] = '0';
+        ascii(header, 257, "ustar\u000000");
+        ascii(header, 265, "root");
+        ascii(header, 297, "root");
+        // the checksum is computed with its own field as spaces.
+        ascii(header, 148, "        ");
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        octal(header, 148, 7, sum);
+        header[155] = ' ';
+        return header;
+    }
+
+    /**
+     * Write a number as zero-padded octal, NUL-terminated, in a field of {@code length} bytes.
+     */
+    private static void octal(byte[] header, int offset, int length, long value) throws IOException {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1) {
+            throw new IOException("Value too large for a tar header: " + value);
+        }
+        StringBuilder field = new StringBuilder();
+        for (int i = digits.length(); i < length - 1; i++) {
+            field.append('0');
+        }
+        field.append(digits);
+        ascii(header, offset, field.toString());
+        header[offset + length - 1] = 0;
+    }
+
+    private static void ascii(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the versions that version ranges in the bundle info files resolved to.
+ * There are two sources. The cache, kept from one build to the next, is believed for a fixed
+ * time after each range was resolved. A lock file, when one is in use, is believed without
+ * question, so that builds get the same versions until someone deletes or edits the file.
+ * Both are plain text, one range per line: {@code groupId:artifactId range version}, plus
+ * the time of resolution in the cache. The fields are separated by tabs, since a range
+ * such as {@code [1.0, 2.0)} may contain spaces.
+ */
+class VersionRangeCache {
+    private final long ttlMillis;
+    private final Log log;
+    private final ConcurrentMap<String, Entry> cached = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Entry> locked = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Entry> used = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    VersionRangeCache(long ttlMillis, Log log) {
+        this.ttlMillis = ttlMillis;
+        this.log = log;
+    }
+
+    void loadCache(File file) {
+        load(file, cached);
+    }
+
+    void loadLock(File file) {
+        load(file, locked);
+    }
+
+    /**
+     * @return the version to use for a range, or null if it must be resolved.
+     */
+    String get(String groupId, String artifactId, String range) {
+        String key = key(groupId, artifactId, range);
+        Entry entry = locked.get(key);
+        if (entry == null) {
+            entry = cached.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.resolved >= ttlMillis) {
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            used.put(key, entry);
+            return entry.version;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Record a freshly resolved range.
+     */
+    void put(String groupId, String artifactId, String range, String version) {
+        String key = key(groupId, artifactId, range);
+        Entry entry = new Entry(version, System.currentTimeMillis());
+        cached.put(key, entry);
+        used.put(key, entry);
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+
+    boolean isEmpty() {
+        return used.isEmpty();
+    }
+
+    /**
+     * Save every range we know about, with its time.
+     */
+    void saveCache(File file) throws IOException {
+        write(file, cached, true);
+    }
+
+    /**
+     * Save the locked ranges, along with the ones that this build added, without times, so that the file
+     * changes only when the versions do. Locked ranges that this build did not use stay, so that a spec
+     * that is left out for a while keeps its versions.
+     */
+    void saveLock(File file) throws IOException {
+        Map<String, Entry> entries = new TreeMap<>(locked);
+        entries.putAll(used);
+        write(file, entries, false);
+    }
+
+    private void load(File file, Map<String, Entry> entries) {
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.trim().split("\t");
+                if (line.startsWith("#") || fields.length < 3) {
+                    continue;
+                }
+                long resolved;
+                try {
+                    resolved = fields.length > 3 ? Long.parseLong(fields[3]) : 0;
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring malformed line in " + file + ": " + line);
+                    continue;
+                }
+                entries.put(key(fields[0], fields[1]), new Entry(fields[2], resolved));
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable version range file " + file + ": " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    private static void write(File file, Map<String, Entry> entries, boolean withTimes) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# groupId:artifactId\trange\tversion" + (withTimes ? "\tresolved-at" : ""));
+        for (Map.Entry<String, Entry> me : new TreeMap<>(entries).entrySet()) {
+            Entry entry = me.getValue();
+            lines.add(me.getKey() + "\t" + entry.version + (withTimes ? "\t" + entry.resolved : ""));
+        }
+        Path target = file.toPath();
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            AtomicFiles.move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String key(String groupId, String artifactId, String range) {
+        return key(groupId + ":" + artifactId, range);
+    }
+
+    private static String key(String ga, String range) {
+        return ga + "\t" + range;
+    }
+
+    private static class Entry {
+        final String version;
+        final long resolved;
+
+        Entry(String version, long resolved) {
+            this.version = version;
+            this.resolved = resolved;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks, at build time, that a set of bundles can resolve against each other: that each mandatory
+ * {@code Import-Package} has an exporter at a version in its range, that each mandatory
+ * {@code Require-Bundle} is here at a version in its range, and that each fragment has its host.
+ * Packages that the framework and the JRE provide are taken as given.
+ */
+class WiringVerifier {
+    /**
+     * The packages that we assume the framework provides.
+     */
+    static final List<String> DEFAULT_SYSTEM_PACKAGES = Collections.unmodifiableList(Arrays.asList(
+        "java.*", "javax.*", "org.w3c.*", "org.xml.sax.*", "org.ietf.jgss", "org.omg.*",
+        "org.osgi.*", "sun.*", "com.sun.*", "jdk.*"
+    ));
+
+    private final BundleWiring wiring;
+    private final List<String> systemPackages;
+    private final List<String> problems = new ArrayList<>();
+    private final List<String> optionalMisses = new ArrayList<>();
+
+    /**
+     * @param systemPackages package names, or prefixes ending in {@code .*}, that need no exporter.
+     */
+    WiringVerifier(BundleWiring wiring, List<String> systemPackages) {
+        this.wiring = wiring;
+        this.systemPackages = systemPackages;
+        for (BundleSpec bundle : wiring.getBundles()) {
+            checkImports(bundle);
+            checkRequires(bundle);
+            checkHost(bundle);
+        }
+    }
+
+    /**
+     * @return the problems, one line each, which would stop bundles resolving.
+     */
+    List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @return the optional imports and requirements that nothing here satisfies.
+     */
+    List<String> getOptionalMisses() {
+        return optionalMisses;
+    }
+
+    private void checkImports(BundleSpec bundle) {
+        for (OsgiHeader.Clause clause : OsgiHeader.parse(bundle.manifest.get(BundleManifest.IMPORT_PACKAGE))) {
+            String rangeText = clause.attributes.get("version");
+            OsgiVersionRange range = parseRange(bundle, BundleManifest.IMPORT_PACKAGE, rangeText);
+            if (range == null) {
+                continue;
+            }
+            for (String pkg : clause.paths) {
+                if (isSystemPackage(pkg) || !wiring.exporters(pkg, range).isEmpty()) {
+                    continue;
+                }
+                List<String> available = new ArrayList<>();
+                for (BundleWiring.Export export : wiring.exports(pkg)) {
+                    available.add(export.version + " from " + export.bundle.filename);
+                }
+                String requirement = BundleManifest.IMPORT_PACKAGE + " " + pkg + describe("version", rangeText);
+                report(bundle, clause, available.isEmpty()
+                    ? requirement + " is not exported by any bundle"
+                    : requirement + " is only exported at " + available);
+            }
+        }
+    }
+
+    private void checkRequires(BundleSpec bundle) {
+        for (OsgiHeader.Clause clause : OsgiHeader.parse(bundle.manifest.get(BundleManifest.REQUIRE_BUNDLE))) {
+            String rangeText = clause.attributes.get("bundle-version");
+            OsgiVersionRange range = parseRange(bundle, BundleManifest.REQUIRE_BUNDLE, rangeText);
+            if (range == null) {
+                continue;
+            }
+            for (String name : clause.paths) {
+                if (!wiring.named(name, range).isEmpty()) {
+                    continue;
+                }
+                List<String> available = new ArrayList<>();
+                for (BundleSpec named : wiring.named(name)) {
+                    available.add(named.manifest.get(BundleManifest.BUNDLE_VERSION) + " in " + named.filename);
+                }
+                String requirement = BundleManifest.REQUIRE_BUNDLE + " " + name + describe("bundle-version", rangeText);
+                report(bundle, clause, available.isEmpty()
+                    ? requirement + " is not among the bundles"
+                    : requirement + " is only available at " + available);
+            }
+        }
+    }
+
+    private void checkHost(BundleSpec bundle) {
+        List<OsgiHeader.Clause> clauses = OsgiHeader.parse(bundle.manifest.get(BundleManifest.FRAGMENT_HOST));
+        if (clauses.isEmpty()) {
+            return;
+        }
+        OsgiHeader.Clause clause = clauses.get(0);
+        String name = clause.paths.get(0);
+        String rangeText = clause.attributes.get("bundle-version");
+        OsgiVersionRange range = parseRange(bundle, BundleManifest.FRAGMENT_HOST, rangeText);
+        // the system bundle can host fragments too.
+        if (range != null && !"system.bundle".equals(name) && wiring.named(name, range).isEmpty()) {
+            problems.add(String.format("%s: %s %s%s is not among the bundles",
+                bundle.filename, BundleManifest.FRAGMENT_HOST, name, describe("bundle-version", rangeText)));
+        }
+    }
+
+    private OsgiVersionRange parseRange(BundleSpec bundle, String header, String text) {
+        try {
+            return OsgiVersionRange.parse(text);
+        } catch (IllegalArgumentException e) {
+            problems.add(String.format("%s: invalid version range \"%s\" in %s", bundle.filename, text, header));
+            return null;
+        }
+    }
+
+    private void report(BundleSpec bundle, OsgiHeader.Clause clause, String message) {
+        if ("optional".equals(clause.directives.get("resolution"))) {
+            optionalMisses.add(bundle.filename + ": optional " + message);
+        } else {
+            problems.add(bundle.filename + ": " + message);
+        }
+    }
+
+    private static String describe(String attribute, String rangeText) {
+        return rangeText == null ? "" : ";" + attribute + "=\"" + rangeText + "\"";
+    }
+
+    private boolean isSystemPackage(String pkg) {
+        for (String pattern : systemPackages) {
+            if (pattern.endsWith(".*")) {
+                String prefix = pattern.substring(0, pattern.length() - 2);
+                if (pkg.equals(prefix) || pkg.startsWith(prefix + ".")) {
+                    return true;
+                }
+            } else if (pkg.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
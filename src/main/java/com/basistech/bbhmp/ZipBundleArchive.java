@@ -0,0 +1,82 @@
+/*
+* Copyright 2016 Basis Technology Corp.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.basistech.bbhmp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A zip of bundles. Jars are stored, not deflated again; a stored entry needs its CRC up front,
+ * which costs a read of the jar before it is written.
+ */
+class ZipBundleArchive extends BundleArchive {
+    private final ZipOutputStream zip;
+
+    ZipBundleArchive(OutputStream out) {
+        zip = new ZipOutputStream(out);
+    }
+
+    @Override
+    Map<String, String> addFile(String name, File file, List<String> algorithms) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(file.lastModified());
+        if (isCompressed(name)) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(file.length());
+            entry.setCompressedSize(file.length());
+            entry.setCrc(crc(file));
+        }
+        zip.putNextEntry(entry);
+        Map<String, String> digests = copyContent(file, zip, algorithms);
+        zip.closeEntry();
+        return digests;
+    }
+
+    @Override
+    void addBytes(String name, byte[] content, long time) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(time);
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+        entryWritten(content.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}